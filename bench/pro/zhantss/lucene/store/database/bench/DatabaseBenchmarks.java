@@ -0,0 +1,44 @@
+package pro.zhantss.lucene.store.database.bench;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+import pro.zhantss.lucene.store.database.config.H2Config;
+
+/**
+ * The directories of the benchmarks, on an in-memory H2 database of their own.
+ *
+ */
+final class DatabaseBenchmarks {
+
+    private DatabaseBenchmarks() {
+    }
+
+    /**
+     * @return an in-memory H2 data source, kept until the JVM exits
+     */
+    static JdbcDataSource dataSource() {
+        final JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bench" + System.nanoTime() + ";DATABASE_TO_UPPER=FALSE;DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+
+    /**
+     * @param config
+     * @return a directory on a new in-memory H2 database
+     * @throws DatabaseDirectoryException
+     */
+    static DatabaseDirectory directory(final DatabaseConfig config) throws DatabaseDirectoryException {
+        return new DatabaseDirectory(dataSource(), config, "lucene_bench");
+    }
+
+    /**
+     * @return a directory with the default configuration on a new in-memory H2 database
+     * @throws DatabaseDirectoryException
+     */
+    static DatabaseDirectory directory() throws DatabaseDirectoryException {
+        return directory(new H2Config());
+    }
+}
@@ -0,0 +1,152 @@
+package pro.zhantss.lucene.store.database.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pro.zhantss.lucene.store.database.datasource.ConnectionProxy;
+import pro.zhantss.lucene.store.database.datasource.DelegatingConnectionProxy;
+
+/**
+ * The overhead of the connection proxies of the transactions, the pool and the transaction aware data source on the
+ * statements, over an in-memory H2 connection: <code>direct</code> uses the connection itself, <code>reflective</code>
+ * the previous <code>java.lang.reflect.Proxy</code> comparing the method names and calling <code>Method.invoke</code>,
+ * <code>delegating</code> a {@link DelegatingConnectionProxy}.
+ * <p/>
+ * {@link #call()} is a single call on the connection, {@link #statement()} the calls of a query of the handler,
+ * {@link #wrap()} the creation of the proxy done once per connection or pin.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatabaseConnectionProxyBenchmark {
+
+    @Param({ "direct", "reflective", "delegating" })
+    private String proxy;
+
+    private Connection target;
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        target = DatabaseBenchmarks.dataSource().getConnection();
+        connection = wrap(proxy, target);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        target.close();
+    }
+
+    @Benchmark
+    public boolean call() throws SQLException {
+        return connection.getAutoCommit();
+    }
+
+    @Benchmark
+    public int statement() throws SQLException {
+        final PreparedStatement ps = connection.prepareStatement("SELECT 1");
+        try {
+            ps.setFetchSize(1);
+            final ResultSet rs = ps.executeQuery();
+            try {
+                return rs.next() ? rs.getInt(1) : -1;
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+    }
+
+    @Benchmark
+    public Connection wrap() {
+        return wrap(proxy, target);
+    }
+
+    private static Connection wrap(final String proxy, final Connection target) {
+        if ("reflective".equals(proxy)) {
+            return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                    new Class<?>[] { ConnectionProxy.class }, new ReflectiveInvocationHandler(target));
+        }
+        if ("delegating".equals(proxy)) {
+            return new BenchConnectionProxy(target);
+        }
+        return target;
+    }
+
+    /**
+     * The connection of a transaction, as a {@link DelegatingConnectionProxy}.
+     */
+    private static final class BenchConnectionProxy extends DelegatingConnectionProxy {
+
+        private BenchConnectionProxy(final Connection target) {
+            super(target);
+        }
+
+        @Override
+        public boolean isControlConnection() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * The connection of a transaction, as the reflective proxies did it.
+     */
+    private static final class ReflectiveInvocationHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        private ReflectiveInvocationHandler(final Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getName().equals("getTargetConnection")) {
+                return target;
+            } else if (method.getName().equals("isControlConnection")) {
+                return Boolean.FALSE;
+            } else if (method.getName().equals("equals")) {
+                return proxy == args[0] ? Boolean.TRUE : Boolean.FALSE;
+            } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (method.getName().equals("close")) {
+                return null;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (final InvocationTargetException ex) {
+                throw ex.getTargetException();
+            }
+        }
+    }
+}
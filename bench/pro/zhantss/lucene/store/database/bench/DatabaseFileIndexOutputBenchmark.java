@@ -0,0 +1,114 @@
+package pro.zhantss.lucene.store.database.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.lucene.store.IOContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.index.DatabaseFileIndexOutput;
+
+/**
+ * Writes the spill file of a large output: 5M VInts plus a 300 bytes block every 1024 values, about 19MB.
+ * <p/>
+ * {@link #databaseFileIndexOutput()} goes through the buffer of {@link DatabaseFileIndexOutput} and its
+ * <code>FileChannel</code>, {@link #randomAccessFile()} is the previous write path: one
+ * <code>RandomAccessFile</code> write and one <code>CRC32</code> update per byte. The upload to the database at
+ * close is not measured.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatabaseFileIndexOutputBenchmark {
+
+    private static final int VALUES = 5 * 1000 * 1000;
+    private static final int BLOCK_INTERVAL = 1024;
+
+    private final byte[] block = new byte[300];
+
+    private DatabaseDirectory directory;
+    private DatabaseFileIndexOutput output;
+    private File tempFile;
+    private RandomAccessFile file;
+
+    @Setup(Level.Trial)
+    public void setUpDirectory() throws IOException {
+        directory = DatabaseBenchmarks.directory();
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownDirectory() throws IOException {
+        directory.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        output = new DatabaseFileIndexOutput(directory, "_0.pos", IOContext.DEFAULT);
+        tempFile = File.createTempFile("lucene_bench", ".ljt");
+        file = new RandomAccessFile(tempFile, "rw");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        output.close();
+        directory.deleteFile("_0.pos");
+        file.close();
+        tempFile.delete();
+    }
+
+    @Benchmark
+    public long databaseFileIndexOutput() throws IOException {
+        for (int i = 0; i < VALUES; i++) {
+            output.writeVInt(i);
+            if (i % BLOCK_INTERVAL == 0) {
+                output.writeBytes(block, 0, block.length);
+            }
+        }
+        return output.getChecksum();
+    }
+
+    @Benchmark
+    public long randomAccessFile() throws IOException {
+        final CRC32 digest = new CRC32();
+        for (int i = 0; i < VALUES; i++) {
+            int value = i;
+            while ((value & ~0x7F) != 0) {
+                writeByte(digest, (byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte(digest, (byte) value);
+            if (i % BLOCK_INTERVAL == 0) {
+                file.write(block, 0, block.length);
+                digest.update(block, 0, block.length);
+            }
+        }
+        return digest.getValue();
+    }
+
+    private void writeByte(final CRC32 digest, final byte b) throws IOException {
+        file.write(b);
+        digest.update(b);
+    }
+}
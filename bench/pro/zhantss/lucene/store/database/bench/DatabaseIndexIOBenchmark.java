@@ -0,0 +1,125 @@
+package pro.zhantss.lucene.store.database.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.index.DatabaseFetchIndexInput;
+import pro.zhantss.lucene.store.database.index.DatabaseIndexOutput;
+import pro.zhantss.lucene.store.database.index.DatabaseMemoryIndexInput;
+import pro.zhantss.lucene.store.database.index.DatabaseMemoryIndexOutput;
+
+/**
+ * The per-byte paths of the outputs and inputs, the cost of one VInt written or read: the writes only store into the
+ * buffer of the output until it is flushed, the reads only refill the buffer of the input through
+ * <code>readInternal</code>, neither allocates nor logs with trace disabled. The <code>gc</code> profiler, on by default
+ * in the <code>bench</code> profile, checks it: <code>gc.alloc.rate.norm</code> is the number of bytes allocated per
+ * operation.
+ * <p/>
+ * The upload of the outputs at close is not measured.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatabaseIndexIOBenchmark {
+
+    private static final int VALUES = 1000 * 1000;
+    private static final String INPUT = "_0.doc";
+    private static final String INDEX_OUTPUT = "_1.doc";
+    private static final String MEMORY_OUTPUT = "_2.doc";
+
+    private DatabaseDirectory directory;
+    private DatabaseIndexOutput indexOutput;
+    private DatabaseMemoryIndexOutput memoryOutput;
+
+    @Setup(Level.Trial)
+    public void setUpDirectory() throws IOException {
+        directory = DatabaseBenchmarks.directory();
+        final DatabaseIndexOutput output = new DatabaseIndexOutput(directory, INPUT, IOContext.DEFAULT);
+        for (int i = 0; i < VALUES; i++) {
+            output.writeVInt(i);
+        }
+        output.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownDirectory() throws IOException {
+        directory.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        indexOutput = new DatabaseIndexOutput(directory, INDEX_OUTPUT, IOContext.DEFAULT);
+        memoryOutput = new DatabaseMemoryIndexOutput(directory, MEMORY_OUTPUT, IOContext.DEFAULT);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        indexOutput.close();
+        memoryOutput.close();
+        directory.deleteFile(INDEX_OUTPUT);
+        directory.deleteFile(MEMORY_OUTPUT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long databaseIndexOutput() throws IOException {
+        for (int i = 0; i < VALUES; i++) {
+            indexOutput.writeVInt(i);
+        }
+        return indexOutput.getChecksum();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long databaseMemoryIndexOutput() throws IOException {
+        for (int i = 0; i < VALUES; i++) {
+            memoryOutput.writeVInt(i);
+        }
+        return memoryOutput.getChecksum();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long databaseMemoryIndexInput() throws IOException {
+        return read(new DatabaseMemoryIndexInput(directory, INPUT, IOContext.DEFAULT));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long databaseFetchIndexInput() throws IOException {
+        return read(new DatabaseFetchIndexInput(directory, INPUT, IOContext.DEFAULT));
+    }
+
+    private static long read(final IndexInput input) throws IOException {
+        long sum = 0;
+        try {
+            for (int i = 0; i < VALUES; i++) {
+                sum += input.readVInt();
+            }
+        } finally {
+            input.close();
+        }
+        return sum;
+    }
+}
@@ -22,4 +22,21 @@ public class DataHandler {
 		return res;
 	}
 	
+	/**
+	 * Reads from the stream until <code>length</code> bytes are read or the end of the stream is reached.
+	 * 
+	 * @return the number of bytes read, less than <code>length</code> only at the end of the stream
+	 */
+	public static int readFully(InputStream stream, byte[] buffer, int offset, int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			int index = stream.read(buffer, offset + read, length - read);
+			if (index == -1) {
+				break;
+			}
+			read += index;
+		}
+		return read;
+	}
+	
 }
@@ -1,11 +1,17 @@
 package pro.zhantss.lucene.store.database;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.store.BaseDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
@@ -13,10 +19,21 @@ import org.apache.lucene.store.IndexOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pro.zhantss.lucene.store.database.cache.DatabaseBlockCache;
+import pro.zhantss.lucene.store.database.cache.DatabaseCatalog;
+import pro.zhantss.lucene.store.database.cache.DatabaseLocalFileCache;
+import pro.zhantss.lucene.store.database.cache.DatabasePrefetchCache;
+import pro.zhantss.lucene.store.database.config.ChunkCompression;
 import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+import pro.zhantss.lucene.store.database.config.DatabaseSql;
+import pro.zhantss.lucene.store.database.datasource.DatabaseConnectionPool;
 import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
-import pro.zhantss.lucene.store.database.index.DatabaseFileIndexOutput;
+import pro.zhantss.lucene.store.database.handler.DatabaseTransaction;
+import pro.zhantss.lucene.store.database.handler.DatabaseUploader;
+import pro.zhantss.lucene.store.database.index.DatabaseContextIOStrategy;
+import pro.zhantss.lucene.store.database.index.DatabaseIOStrategy;
 import pro.zhantss.lucene.store.database.index.DatabaseIndexInput;
+import pro.zhantss.lucene.store.database.index.DatabaseSlicedIndexInput;
 import pro.zhantss.lucene.store.database.lock.DatabaseReadWriteLockFactory;
 
 public class DatabaseDirectory extends BaseDirectory {
@@ -30,7 +47,17 @@ public class DatabaseDirectory extends BaseDirectory {
 
     private final String indexTableName;
     private final DataSource dataSource;
+    private final DatabaseConnectionPool connectionPool;
     private final DatabaseConfig config;
+    private final DatabaseSql sql;
+    private final DatabaseLocalFileCache localCache;
+    private final DatabasePrefetchCache prefetchCache;
+    private final DatabaseCatalog catalog;
+    private final DatabaseUploader uploader;
+    private final DatabaseTransaction transaction;
+    private final boolean chunkHeaders;
+    private final AtomicLong lastGeneration = new AtomicLong(-1);
+    private DatabaseIOStrategy ioStrategy = DatabaseContextIOStrategy.INSTANCE;
 
     /**
      * @param dataSource
@@ -40,33 +67,143 @@ public class DatabaseDirectory extends BaseDirectory {
      */
     public DatabaseDirectory(final DataSource dataSource, final DatabaseConfig config, final String indexTableName)
             throws DatabaseDirectoryException {
-        this.dataSource = dataSource;
+        if (config.getConnectionPoolSize() > 0) {
+            connectionPool = new DatabaseConnectionPool(dataSource, config.getConnectionPoolSize(),
+                    config.getConnectionPoolMinIdle(), config.getConnectionPoolIdleTimeout(),
+                    config.getConnectionPoolValidationInterval(), config.getConnectionPoolTimeout());
+            this.dataSource = connectionPool;
+        } else {
+            connectionPool = null;
+            this.dataSource = dataSource;
+        }
         this.config = config;
         this.indexTableName = indexTableName;
+        sql = new DatabaseSql(config, indexTableName);
         lockFactory = new DatabaseReadWriteLockFactory(this);
+        catalog = new DatabaseCatalog(this);
+        uploader = new DatabaseUploader(this);
+        transaction = config.isTransactionalCommit() ? new DatabaseTransaction(this) : null;
 
         // create directory, if it doesn't exist
         if (config.supportsTableExists() && !handler.existsIndexTable(this)) {
             LOGGER.info("{}: creating lucene index table", this);
             handler.createIndexTable(this);
         }
+        chunkHeaders = config.isChunked() && handler.hasChunkHeaders(this);
+        if (config.isChunked() && !chunkHeaders && config.isChunkCompressed()) {
+            LOGGER.warn("{}: the chunk table predates the chunk compression, the chunks are stored uncompressed", this);
+        }
+
+        if (config.getLocalCachePath() != null) {
+            try {
+                localCache = new DatabaseLocalFileCache(this, new File(config.getLocalCachePath(), indexTableName));
+            } catch (final IOException e) {
+                throw new DatabaseDirectoryException(e);
+            }
+        } else {
+            localCache = null;
+        }
+        prefetchCache = new DatabasePrefetchCache(this);
     }
 
     public String getIndexTableName() {
         return indexTableName;
     }
 
+    /**
+     * @return the sql of the statements run on the index table
+     */
+    public DatabaseSql getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the <code>DataSource</code> of the directory, its {@link DatabaseConnectionPool} with
+     *         {@link DatabaseConfig#getConnectionPoolSize()}
+     */
     public DataSource getDataSource() {
         return dataSource;
     }
 
+    /**
+     * Pins a pooled connection to the current thread, used by all the statements of the thread until the matching
+     * {@link #unpin()}: a burst of operations, such as opening a reader, runs on a single connection. Does nothing
+     * without {@link DatabaseConfig#getConnectionPoolSize()}.
+     */
+    public void pin() {
+        if (connectionPool != null) {
+            connectionPool.pin();
+        }
+    }
+
+    /**
+     * @see #pin()
+     */
+    public void unpin() {
+        if (connectionPool != null) {
+            connectionPool.unpin();
+        }
+    }
+
     public DatabaseConfig getConfig() {
         return config;
     }
 
+    /**
+     * @return <code>true</code> if the chunks of the chunk table start with a header byte, which tells whether and how
+     *         they are compressed, see {@link DatabaseConfig#setChunkCompression(String, ChunkCompression)}
+     */
+    public boolean hasChunkHeaders() {
+        return chunkHeaders;
+    }
+
+    /**
+     * @return the names and lengths of the files, see {@link DatabaseConfig#isCatalogEnabled()}
+     */
+    public DatabaseCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return the generation of the last file saved by the directory with the
+     *         {@link pro.zhantss.lucene.store.database.config.StorageLayout#SPLIT} layout, <code>-1</code> until the
+     *         handler reads it from the table
+     */
+    public AtomicLong getLastGeneration() {
+        return lastGeneration;
+    }
+
+    /**
+     * @return runs the uploads of the closed outputs, see {@link DatabaseConfig#isWriteBehind()}
+     */
+    public DatabaseUploader getUploader() {
+        return uploader;
+    }
+
+    /**
+     * @return the transaction of the current Lucene commit, <code>null</code> without
+     *         {@link DatabaseConfig#isTransactionalCommit()}
+     */
+    public DatabaseTransaction getTransaction() {
+        return transaction;
+    }
+
+    public DatabaseIOStrategy getIOStrategy() {
+        return ioStrategy;
+    }
+
+    /**
+     * @param ioStrategy
+     *            chooses the inputs and outputs per file and <code>IOContext</code>, defaults to
+     *            {@link DatabaseContextIOStrategy}
+     */
+    public void setIOStrategy(final DatabaseIOStrategy ioStrategy) {
+        this.ioStrategy = ioStrategy;
+    }
+
     @Override
     public String[] listAll() throws IOException {
-        final String[] files = handler.listAllFiles(this);
+        final String[] files = config.isCatalogEnabled() ? catalog.listAll() : handler.listAllFiles(this);
         LOGGER.debug("{}.listAll() = {}", this, Arrays.toString(files));
         return files;
     }
@@ -74,12 +211,28 @@ public class DatabaseDirectory extends BaseDirectory {
     @Override
     public void deleteFile(final String name) throws IOException {
         LOGGER.debug("{}.deleteFile({})", this, name);
-        handler.deleteFile(this, name);
+        uploader.discard(name);
+        pin();
+        try {
+            handler.deleteFile(this, name);
+        } finally {
+            unpin();
+        }
+        prefetchCache.invalidate(name);
+        if (localCache != null) {
+            localCache.delete(name);
+        }
     }
 
     @Override
     public long fileLength(final String name) throws IOException {
-        final long length = handler.fileLength(this, name);
+        uploader.await(name);
+        final long length;
+        if (config.isCatalogEnabled()) {
+            length = Math.max(catalog.fileLength(name), 0);
+        } else {
+            length = handler.fileLength(this, name);
+        }
         LOGGER.debug("{}.fileLength({}) = {}", this, name, length);
         return length;
     }
@@ -87,13 +240,23 @@ public class DatabaseDirectory extends BaseDirectory {
     @Override
     public IndexOutput createOutput(final String name, final IOContext context) throws IOException {
         LOGGER.debug("{}.createOutput({}, {})", this, name, context);
-        return new DatabaseFileIndexOutput(this, name, context);
+        if (!DatabaseBlockCache.isCacheable(name) && fileExists(name)) {
+            // rewritten in place (segments.gen), the insert would collide with the previous row
+            deleteFile(name);
+        }
+        return ioStrategy.createOutput(this, name, context);
     }
 
     @Override
     public void sync(final Collection<String> names) throws IOException {
         LOGGER.debug("{}.sync({})", this, names);
-        handler.syncFiles(this, names);
+        uploader.await(names);
+        pin();
+        try {
+            handler.syncFiles(this, names);
+        } finally {
+            unpin();
+        }
     }
 
     // Lucene 5.0
@@ -106,7 +269,110 @@ public class DatabaseDirectory extends BaseDirectory {
     @Override
     public IndexInput openInput(final String name, final IOContext context) throws IOException {
         LOGGER.debug("{}.openInput({}, {})", this, name, context);
-        return new DatabaseIndexInput(this, name, context);
+        uploader.await(name);
+        pin();
+        try {
+            if (localCache != null && DatabaseBlockCache.isCacheable(name)) {
+                return localCache.openInput(name, context);
+            }
+            final byte[] prefetched = prefetchCache.take(name);
+            if (prefetched != null) {
+                return new DatabaseIndexInput(this, name, prefetched);
+            }
+            if (config.isPrefetchOnCommit() && name.startsWith(IndexFileNames.SEGMENTS + "_")) {
+                prefetchCommitFiles();
+            }
+            return ioStrategy.openInput(this, name, context);
+        } finally {
+            unpin();
+        }
+    }
+
+    /**
+     * Fetches the content of all the files of a commit point in a few batched queries, so that opening them does not
+     * cost a round trip each. Only applies to the {@link pro.zhantss.lucene.store.database.config.StorageLayout#BLOB}
+     * layout without local cache.
+     *
+     * @param commit
+     * @throws IOException
+     */
+    public void prefetch(final IndexCommit commit) throws IOException {
+        prefetch(commit.getFileNames());
+    }
+
+    /**
+     * @param names
+     * @throws IOException
+     * @see #prefetch(IndexCommit)
+     */
+    public void prefetch(final Collection<String> names) throws IOException {
+        LOGGER.debug("{}.prefetch({})", this, names);
+        if (localCache == null && !config.isChunked()) {
+            prefetchCache.prefetch(names);
+        }
+    }
+
+    /**
+     * The files of the commit being opened are not known before its <code>segments_N</code> is parsed, but
+     * <code>IndexFileDeleter</code> keeps the table down to the files of the live commits. The files a reopened reader
+     * shares with the previous one were opened already and are skipped.
+     */
+    private void prefetchCommitFiles() throws IOException {
+        // the reader the previous prefetch was for is open, what it did not take is not needed
+        prefetchCache.clear();
+        final List<String> names = new ArrayList<String>();
+        for (final String file : listAll()) {
+            if (!file.startsWith(IndexFileNames.SEGMENTS)) {
+                names.add(file);
+            }
+        }
+        prefetch(names);
+    }
+
+    @Override
+    public IndexInputSlicer createSlicer(final String name, final IOContext context) throws IOException {
+        LOGGER.debug("{}.createSlicer({}, {})", this, name, context);
+        final IndexInput base = openInput(name, context);
+        if (base instanceof DatabaseIndexInput) {
+            // slices are views of the content already in memory
+            final DatabaseIndexInput input = (DatabaseIndexInput) base;
+            return new IndexInputSlicer() {
+
+                @Override
+                public IndexInput openSlice(final String sliceDescription, final long offset, final long length) {
+                    return input.slice(sliceDescription, offset, length);
+                }
+
+                @Override
+                @Deprecated
+                public IndexInput openFullSlice() {
+                    return input.clone();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    input.close();
+                }
+            };
+        }
+        return new IndexInputSlicer() {
+
+            @Override
+            public IndexInput openSlice(final String sliceDescription, final long offset, final long length) {
+                return new DatabaseSlicedIndexInput(sliceDescription, base, offset, length, context);
+            }
+
+            @Override
+            @Deprecated
+            public IndexInput openFullSlice() {
+                return base.clone();
+            }
+
+            @Override
+            public void close() throws IOException {
+                base.close();
+            }
+        };
     }
 
     // Lucene 5.0
@@ -118,8 +384,26 @@ public class DatabaseDirectory extends BaseDirectory {
 
     @Override
     public void close() throws IOException {
-        // TODO do nothing??
         LOGGER.debug("{}.close()", this);
+        try {
+            uploader.close();
+        } finally {
+            try {
+                if (transaction != null) {
+                    transaction.close();
+                }
+            } finally {
+                try {
+                    if (localCache != null) {
+                        localCache.close();
+                    }
+                } finally {
+                    if (connectionPool != null) {
+                        connectionPool.close();
+                    }
+                }
+            }
+        }
     }
 
     @Override
@@ -131,6 +415,10 @@ public class DatabaseDirectory extends BaseDirectory {
 	@Override
 	public boolean fileExists(String name) throws IOException {
 		// TODO SQL校验模拟文件锁? 频繁擦写数据库, 修改为传参update模式
+		uploader.await(name);
+		if (config.isCatalogEnabled()) {
+			return catalog.exists(name);
+		}
 		return handler.existsFile(this, name);
 	}
 	
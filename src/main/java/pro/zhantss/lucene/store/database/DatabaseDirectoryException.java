@@ -6,6 +6,13 @@ public class DatabaseDirectoryException extends IOException {
 
     private static final long serialVersionUID = -2446717740777213051L;
 
+    /**
+     * @param message
+     */
+    public DatabaseDirectoryException(final String message) {
+        super(message);
+    }
+
     /**
      * @param cause
      */
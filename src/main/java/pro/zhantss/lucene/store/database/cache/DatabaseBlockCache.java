@@ -0,0 +1,391 @@
+package pro.zhantss.lucene.store.database.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.datasource.DatabaseConnectionPool;
+
+/**
+ * A process wide cache of fixed-size file blocks, shared by the inputs of all the
+ * {@link pro.zhantss.lucene.store.database.DatabaseDirectory} instances.
+ * <p/>
+ * Blocks are keyed by (data source, index table, file name, block number) and stored in direct (off-heap) buffers,
+ * recycled with the CLOCK algorithm once the byte budget is reached. Lucene files are write-once, the few files that
+ * are rewritten in place (see {@link #isCacheable(String)}) are never cached, and the handler invalidates the blocks of
+ * a file whenever it is saved, renamed or deleted.
+ * <p/>
+ * The budget is split into up to {@link #MAX_SEGMENTS} segments with their own lock, a block belonging to the segment
+ * of its key hash, so that concurrent reads of different blocks rarely wait for each other.
+ * <p/>
+ * Disabled until a budget is given with {@link #setMaxBytes(long)}.
+ *
+ */
+public class DatabaseBlockCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseBlockCache.class);
+
+    /**
+     * The default size of a cached block (in bytes). Currently 64K.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    public static final DatabaseBlockCache INSTANCE = new DatabaseBlockCache();
+
+    /**
+     * Loads a range of a file from the database, called on a cache miss.
+     */
+    public static interface BlockLoader {
+
+        /**
+         * Fill <code>b</code> with <code>length</code> bytes of the file starting at <code>pos</code>.
+         */
+        void load(long pos, byte[] b, int offset, int length) throws IOException;
+    }
+
+    /**
+     * The highest number of segments the budget is split into.
+     */
+    public static final int MAX_SEGMENTS = 16;
+
+    private volatile Segments segments = new Segments(0, DEFAULT_BLOCK_SIZE);
+
+    private long retiredHitCount = 0;
+    private long retiredMissCount = 0;
+
+    private DatabaseBlockCache() {
+    }
+
+    /**
+     * Only the files that are never rewritten under the same name can be cached.
+     *
+     * @param name
+     * @return
+     */
+    public static boolean isCacheable(final String name) {
+        return !IndexFileNames.SEGMENTS_GEN.equals(name) && !name.endsWith(".lock");
+    }
+
+    /**
+     * @return <code>true</code> if a budget was given
+     */
+    public boolean isEnabled() {
+        return segments.segments.length > 0;
+    }
+
+    /**
+     * @return
+     */
+    public long getMaxBytes() {
+        return segments.maxBytes;
+    }
+
+    /**
+     * Changes the budget (in bytes) of the cache, <code>0</code> disables it. The cached blocks are dropped.
+     *
+     * @param maxBytes
+     */
+    public void setMaxBytes(final long maxBytes) {
+        configure(maxBytes, getBlockSize());
+    }
+
+    /**
+     * @return
+     */
+    public int getBlockSize() {
+        return segments.blockSize;
+    }
+
+    /**
+     * Changes the budget (in bytes) and the block size of the cache. The cached blocks are dropped.
+     *
+     * @param maxBytes
+     * @param blockSize
+     */
+    public synchronized void configure(final long maxBytes, final int blockSize) {
+        if (maxBytes < 0 || blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid block cache configuration: maxBytes=" + maxBytes
+                    + ", blockSize=" + blockSize);
+        }
+        LOGGER.info("{}.configure({}, {})", this, maxBytes, blockSize);
+        final Segments retired = segments;
+        retiredHitCount += retired.hitCount();
+        retiredMissCount += retired.missCount();
+        segments = new Segments(maxBytes, blockSize);
+    }
+
+    /**
+     * @return
+     */
+    public synchronized long getHitCount() {
+        return retiredHitCount + segments.hitCount();
+    }
+
+    /**
+     * @return
+     */
+    public synchronized long getMissCount() {
+        return retiredMissCount + segments.missCount();
+    }
+
+    /**
+     * Reads <code>length</code> bytes of a file starting at <code>pos</code>, loading the missing blocks with the
+     * given loader.
+     *
+     * @param directory
+     * @param name
+     * @param fileLength
+     * @param pos
+     * @param b
+     * @param offset
+     * @param length
+     * @param loader
+     * @throws IOException
+     */
+    public void read(final DatabaseDirectory directory, final String name, final long fileLength, final long pos,
+            final byte[] b, final int offset, final int length, final BlockLoader loader) throws IOException {
+        final Segments segments = this.segments;
+        final int blockSize = segments.blockSize;
+        int done = 0;
+        while (done < length) {
+            final long block = (pos + done) / blockSize;
+            final int inBlock = (int) (pos + done - block * blockSize);
+            final int toCopy = Math.min(length - done, blockSize - inBlock);
+            final BlockKey key = new BlockKey(directory, name, block);
+            final Segment segment = segments.segment(key);
+            if (segment == null || !segment.copy(key, inBlock, b, offset + done, toCopy)) {
+                final long blockStart = block * blockSize;
+                final byte[] content = new byte[(int) Math.min(blockSize, fileLength - blockStart)];
+                loader.load(blockStart, content, 0, content.length);
+                System.arraycopy(content, inBlock, b, offset + done, toCopy);
+                if (segment != null) {
+                    segment.put(key, content);
+                }
+            }
+            done += toCopy;
+        }
+    }
+
+    /**
+     * Drops all the cached blocks of a file.
+     *
+     * @param directory
+     * @param name
+     */
+    public void invalidate(final DatabaseDirectory directory, final String name) {
+        for (final Segment segment : segments.segments) {
+            segment.invalidate(directory, name);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName();
+    }
+
+    /**
+     * The segments of one configuration, a block being cached in the segment of its key hash: the reads of different
+     * blocks rarely wait for each other.
+     */
+    private static final class Segments {
+
+        private final long maxBytes;
+        private final int blockSize;
+        private final Segment[] segments;
+
+        private Segments(final long maxBytes, final int blockSize) {
+            this.maxBytes = maxBytes;
+            this.blockSize = blockSize;
+            final int slots = (int) Math.min(Integer.MAX_VALUE, maxBytes / blockSize);
+            segments = new Segment[Math.min(MAX_SEGMENTS, slots)];
+            for (int i = 0; i < segments.length; i++) {
+                // spread the remainder over the first segments
+                segments[i] = new Segment(slots / segments.length + (i < slots % segments.length ? 1 : 0), blockSize);
+            }
+        }
+
+        private Segment segment(final BlockKey key) {
+            if (segments.length == 0) {
+                return null;
+            }
+            final int hash = key.hash ^ key.hash >>> 16;
+            return segments[(hash & Integer.MAX_VALUE) % segments.length];
+        }
+
+        private long hitCount() {
+            long hitCount = 0;
+            for (final Segment segment : segments) {
+                hitCount += segment.getHitCount();
+            }
+            return hitCount;
+        }
+
+        private long missCount() {
+            long missCount = 0;
+            for (final Segment segment : segments) {
+                missCount += segment.getMissCount();
+            }
+            return missCount;
+        }
+    }
+
+    /**
+     * A share of the budget, with its own blocks, clock and lock.
+     */
+    private static final class Segment {
+
+        private final Map<BlockKey, Slot> blocks = new HashMap<BlockKey, Slot>();
+        private final Slot[] slots;
+        private final int blockSize;
+        private int allocated = 0;
+        private int hand = 0;
+
+        private long hitCount = 0;
+        private long missCount = 0;
+
+        private Segment(final int slots, final int blockSize) {
+            this.slots = new Slot[slots];
+            this.blockSize = blockSize;
+        }
+
+        private synchronized long getHitCount() {
+            return hitCount;
+        }
+
+        private synchronized long getMissCount() {
+            return missCount;
+        }
+
+        private synchronized boolean copy(final BlockKey key, final int inBlock, final byte[] b, final int offset,
+                final int length) {
+            final Slot slot = blocks.get(key);
+            if (slot == null || inBlock + length > slot.length) {
+                missCount++;
+                return false;
+            }
+            hitCount++;
+            slot.referenced = true;
+            slot.buffer.position(inBlock);
+            slot.buffer.get(b, offset, length);
+            return true;
+        }
+
+        private synchronized void put(final BlockKey key, final byte[] content) {
+            if (blocks.containsKey(key)) {
+                // loaded concurrently by another input
+                return;
+            }
+            final Slot slot = nextSlot();
+            slot.key = key;
+            slot.length = content.length;
+            slot.referenced = false;
+            slot.buffer.clear();
+            slot.buffer.put(content);
+            blocks.put(key, slot);
+        }
+
+        private Slot nextSlot() {
+            if (allocated < slots.length) {
+                final Slot slot = new Slot(ByteBuffer.allocateDirect(blockSize));
+                slots[allocated++] = slot;
+                return slot;
+            }
+            while (true) {
+                final Slot slot = slots[hand];
+                hand = (hand + 1) % slots.length;
+                if (slot.key == null) {
+                    return slot;
+                }
+                if (slot.referenced) {
+                    slot.referenced = false;
+                } else {
+                    blocks.remove(slot.key);
+                    slot.key = null;
+                    return slot;
+                }
+            }
+        }
+
+        private synchronized void invalidate(final DatabaseDirectory directory, final String name) {
+            if (blocks.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < allocated; i++) {
+                final Slot slot = slots[i];
+                if (slot.key != null && slot.key.matches(directory, name)) {
+                    blocks.remove(slot.key);
+                    slot.key = null;
+                }
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        private final ByteBuffer buffer;
+        private BlockKey key;
+        private int length;
+        private boolean referenced;
+
+        private Slot(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class BlockKey {
+
+        private final Object dataSource;
+        private final String table;
+        private final String name;
+        private final long block;
+        private final int hash;
+
+        private BlockKey(final DatabaseDirectory directory, final String name, final long block) {
+            dataSource = dataSource(directory);
+            table = directory.getIndexTableName();
+            this.name = name;
+            this.block = block;
+            hash = 31 * (31 * (31 * System.identityHashCode(dataSource) + table.hashCode()) + name.hashCode())
+                    + (int) (block ^ block >>> 32);
+        }
+
+        private boolean matches(final DatabaseDirectory directory, final String name) {
+            return dataSource == dataSource(directory) && table.equals(directory.getIndexTableName())
+                    && this.name.equals(name);
+        }
+
+        /**
+         * The directories on the same table share their blocks, whether they pool their connections or not.
+         */
+        private static Object dataSource(final DatabaseDirectory directory) {
+            final DataSource dataSource = directory.getDataSource();
+            if (dataSource instanceof DatabaseConnectionPool) {
+                return ((DatabaseConnectionPool) dataSource).getTargetDataSource();
+            }
+            return dataSource;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof BlockKey)) {
+                return false;
+            }
+            final BlockKey other = (BlockKey) obj;
+            return block == other.block && dataSource == other.dataSource && table.equals(other.table)
+                    && name.equals(other.name);
+        }
+    }
+}
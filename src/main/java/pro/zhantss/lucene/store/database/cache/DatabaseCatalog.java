@@ -0,0 +1,179 @@
+package pro.zhantss.lucene.store.database.cache;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+
+/**
+ * The names and lengths of the files of a {@link DatabaseDirectory}, serving <code>listAll</code>,
+ * <code>fileExists</code> and <code>fileLength</code> without a query each.
+ * <p/>
+ * The files written, renamed and deleted through the directory are recorded as they are. Changes made by other
+ * processes are detected by a cheap aggregate over the table (see {@link DatabaseConfig#sqlSelectGeneration(String)}),
+ * run at most once per {@link DatabaseConfig#getCatalogRefreshInterval()}, and the whole catalog is reloaded in a
+ * single query when it changed by more than the files recorded since the previous check.
+ *
+ */
+public class DatabaseCatalog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseCatalog.class);
+    private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+
+    private final DatabaseDirectory directory;
+    private Map<String, Long> lengths;
+    private String generation;
+    private long checked;
+
+    /**
+     * The files and bytes recorded since the previous check, by which the count and the size of the generation are
+     * expected to change.
+     */
+    private boolean recorded;
+    private long recordedCount;
+    private long recordedSize;
+
+    public DatabaseCatalog(final DatabaseDirectory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the names of all the files
+     * @throws DatabaseDirectoryException
+     */
+    public synchronized String[] listAll() throws DatabaseDirectoryException {
+        refreshIfStale();
+        return lengths.keySet().toArray(new String[lengths.size()]);
+    }
+
+    /**
+     * @param name
+     * @return the length of the file, or <code>-1</code> if it does not exist
+     * @throws DatabaseDirectoryException
+     */
+    public synchronized long fileLength(final String name) throws DatabaseDirectoryException {
+        refreshIfStale();
+        final Long length = lengths.get(name);
+        return length != null ? length : -1;
+    }
+
+    /**
+     * @param name
+     * @return
+     * @throws DatabaseDirectoryException
+     */
+    public boolean exists(final String name) throws DatabaseDirectoryException {
+        return fileLength(name) >= 0;
+    }
+
+    /**
+     * Records a file saved through the directory.
+     *
+     * @param name
+     * @param length
+     */
+    public synchronized void put(final String name, final long length) {
+        if (lengths != null) {
+            final Long previous = lengths.put(name, length);
+            record(previous != null ? 0 : 1, length - (previous != null ? previous : 0));
+        }
+    }
+
+    /**
+     * Records a file deleted through the directory.
+     *
+     * @param name
+     */
+    public synchronized void remove(final String name) {
+        if (lengths != null) {
+            final Long previous = lengths.remove(name);
+            if (previous != null) {
+                record(-1, -previous);
+            }
+        }
+    }
+
+    /**
+     * Records a file renamed through the directory.
+     *
+     * @param source
+     * @param dest
+     */
+    public synchronized void rename(final String source, final String dest) {
+        if (lengths != null) {
+            final Long length = lengths.remove(source);
+            if (length != null) {
+                final Long previous = lengths.put(dest, length);
+                record(previous != null ? -1 : 0, previous != null ? -previous : 0);
+            }
+        }
+    }
+
+    /**
+     * Forces a check of the table on the next call.
+     */
+    public synchronized void invalidate() {
+        checked = 0;
+        generation = null;
+    }
+
+    private void record(final long count, final long size) {
+        recorded = true;
+        recordedCount += count;
+        recordedSize += size;
+    }
+
+    private void refreshIfStale() throws DatabaseDirectoryException {
+        final long now = System.currentTimeMillis();
+        if (lengths != null && now - checked < directory.getConfig().getCatalogRefreshInterval()) {
+            return;
+        }
+        // the generation first, a change in between is caught by the next check
+        final String current = handler.tableGeneration(directory);
+        if (lengths == null || !current.equals(generation) && !isRecorded(current)) {
+            LOGGER.debug("{}: reloading, generation {} -> {}", this, generation, current);
+            lengths = handler.fileLengths(directory);
+        }
+        generation = current;
+        checked = now;
+        recorded = false;
+        recordedCount = 0;
+        recordedSize = 0;
+    }
+
+    /**
+     * Whether the change of the generation is the one of the files recorded since the previous check: no other
+     * process changed the table in between.
+     */
+    private boolean isRecorded(final String current) {
+        if (!recorded || generation == null) {
+            return false;
+        }
+        return count(current) == count(generation) + recordedCount
+                && size(current) == size(generation) + recordedSize;
+    }
+
+    /**
+     * The generation is <code>count/last/size</code>, see
+     * {@link DatabaseDirectoryHandler#tableGeneration(DatabaseDirectory)}.
+     */
+    private static long count(final String generation) {
+        final int end = generation.indexOf('/');
+        return end > 0 ? Long.parseLong(generation.substring(0, end)) : -1;
+    }
+
+    private static long size(final String generation) {
+        final int start = generation.lastIndexOf('/');
+        return start >= 0 ? Long.parseLong(generation.substring(start + 1)) : -1;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(directory).toString();
+    }
+}
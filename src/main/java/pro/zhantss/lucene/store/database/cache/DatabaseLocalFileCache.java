@@ -0,0 +1,254 @@
+package pro.zhantss.lucene.store.database.cache;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NoLockFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+
+/**
+ * A local disk copy of the files of a {@link DatabaseDirectory}, the database staying the source of truth.
+ * <p/>
+ * A file is downloaded the first time it is opened, and served through a {@link MMapDirectory} afterwards. Every
+ * downloaded file has a sidecar (<code>&lt;name&gt;.dbcrc</code>) holding its length, its CRC32 and the version of its
+ * database row (see {@link DatabaseDirectoryHandler#fileVersion(DatabaseDirectory, String)}). Every open compares the
+ * version of the row with the one of the local copy, so that a file written again by another process, even with the
+ * same length, is downloaded again; after a restart the content of the copy is also checked against its CRC32. Files
+ * that are rewritten in place (see {@link DatabaseBlockCache#isCacheable(String)}) are never cached.
+ *
+ */
+public class DatabaseLocalFileCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseLocalFileCache.class);
+    private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+
+    private static final String CHECKSUM_SUFFIX = ".dbcrc";
+    private static final String DOWNLOAD_SUFFIX = ".download";
+    private static final int DOWNLOAD_BUFFER_SIZE = 1024 * 1024;
+    private static final int LOCK_STRIPES = 32;
+
+    private final DatabaseDirectory directory;
+    private final File path;
+    private final MMapDirectory mmapDirectory;
+
+    private final ConcurrentMap<String, String> versions = new ConcurrentHashMap<String, String>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * @param directory
+     * @param path
+     *            the local folder, dedicated to the index table of the directory
+     * @throws IOException
+     */
+    public DatabaseLocalFileCache(final DatabaseDirectory directory, final File path) throws IOException {
+        this.directory = directory;
+        this.path = path;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        if (!path.isDirectory() && !path.mkdirs()) {
+            throw new IOException("Could not create local cache folder: " + path);
+        }
+        mmapDirectory = new MMapDirectory(path, NoLockFactory.getNoLockFactory());
+        purge();
+    }
+
+    /**
+     * @return the local folder
+     */
+    public File getPath() {
+        return path;
+    }
+
+    /**
+     * Opens the local copy of a file, downloading it first if there is no copy of the current version.
+     *
+     * @param name
+     * @param context
+     * @return
+     * @throws IOException
+     */
+    public IndexInput openInput(final String name, final IOContext context) throws IOException {
+        LOGGER.debug("{}.openInput({}, {})", this, name, context);
+        final String version = handler.fileVersion(directory, name);
+        if (version == null) {
+            throw new FileNotFoundException(name + " in " + directory);
+        }
+        synchronized (lock(name)) {
+            if (!version.equals(versions.get(name)) && !verify(name, version)) {
+                download(name, version);
+            }
+        }
+        return mmapDirectory.openInput(name, context);
+    }
+
+    /**
+     * Drops the local copy of a file.
+     *
+     * @param name
+     */
+    public void delete(final String name) {
+        LOGGER.debug("{}.delete({})", this, name);
+        synchronized (lock(name)) {
+            versions.remove(name);
+            new File(path, name).delete();
+            new File(path, name + CHECKSUM_SUFFIX).delete();
+        }
+    }
+
+    public void close() throws IOException {
+        mmapDirectory.close();
+    }
+
+    private Object lock(final String name) {
+        return locks[(name.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    /**
+     * Checks a copy left by a previous run, or of a previous version, against the version of the database row and
+     * its checksum sidecar.
+     */
+    private boolean verify(final String name, final String version) throws IOException {
+        final File file = new File(path, name);
+        final File checksumFile = new File(path, name + CHECKSUM_SUFFIX);
+        if (!file.isFile() || !checksumFile.isFile()) {
+            return false;
+        }
+        final long length;
+        final long checksum;
+        final String localVersion;
+        final DataInputStream in = new DataInputStream(new FileInputStream(checksumFile));
+        try {
+            length = in.readLong();
+            checksum = in.readLong();
+            localVersion = in.readUTF();
+        } catch (final IOException e) {
+            LOGGER.warn("{}: unreadable checksum of {}: {}", this, name, e.getMessage());
+            return false;
+        } finally {
+            in.close();
+        }
+        if (!version.equals(localVersion) || file.length() != length || checksum(file) != checksum) {
+            LOGGER.info("{}: stale local copy of {}", this, name);
+            return false;
+        }
+        versions.put(name, version);
+        return true;
+    }
+
+    private void download(final String name, final String version) throws IOException {
+        final long length = handler.fileLengthIfExists(directory, name);
+        if (length < 0) {
+            throw new FileNotFoundException(name + " in " + directory);
+        }
+        LOGGER.debug("{}.download({}) [{} bytes]", this, name, length);
+        final File download = new File(path, name + DOWNLOAD_SUFFIX);
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[(int) Math.min(DOWNLOAD_BUFFER_SIZE, Math.max(length, 1))];
+        final OutputStream out = new FileOutputStream(download);
+        try {
+            long pos = 0;
+            while (pos < length) {
+                final int toRead = (int) Math.min(buffer.length, length - pos);
+                if (handler.fileRange(directory, name, pos, buffer, 0, toRead) < toRead) {
+                    throw new EOFException("Truncated content of " + name + " at " + pos);
+                }
+                crc.update(buffer, 0, toRead);
+                out.write(buffer, 0, toRead);
+                pos += toRead;
+            }
+        } catch (final IOException e) {
+            out.close();
+            download.delete();
+            throw e;
+        }
+        out.close();
+        if (download.length() != length) {
+            download.delete();
+            throw new IOException("Downloaded " + download.length() + " bytes instead of " + length + " for " + name);
+        }
+        final File checksumFile = new File(path, name + CHECKSUM_SUFFIX);
+        final DataOutputStream checksumOut = new DataOutputStream(new FileOutputStream(checksumFile));
+        try {
+            checksumOut.writeLong(length);
+            checksumOut.writeLong(crc.getValue());
+            checksumOut.writeUTF(version);
+        } finally {
+            checksumOut.close();
+        }
+        final File file = new File(path, name);
+        if (file.exists() && !file.delete() || !download.renameTo(file)) {
+            checksumFile.delete();
+            download.delete();
+            throw new IOException("Could not move " + download + " to " + file);
+        }
+        versions.put(name, version);
+    }
+
+    private static long checksum(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[64 * 1024];
+        final InputStream in = new BufferedInputStream(new FileInputStream(file), buffer.length);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Removes the local files of which the database has no longer any trace (deleted by another process).
+     */
+    private void purge() throws IOException {
+        final Set<String> names = new HashSet<String>(Arrays.asList(handler.listAllFiles(directory)));
+        final File[] files = path.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            String name = file.getName();
+            if (name.endsWith(CHECKSUM_SUFFIX)) {
+                name = name.substring(0, name.length() - CHECKSUM_SUFFIX.length());
+            } else if (name.endsWith(DOWNLOAD_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            if (!names.contains(name)) {
+                LOGGER.debug("{}: purging {}", this, file.getName());
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(directory).append("@")
+                .append(path).toString();
+    }
+}
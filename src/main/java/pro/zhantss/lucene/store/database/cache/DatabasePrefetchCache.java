@@ -0,0 +1,163 @@
+package pro.zhantss.lucene.store.database.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+
+/**
+ * The content of files fetched in batches ahead of their <code>openInput</code>, typically all the files of a commit
+ * point when a reader is opened.
+ * <p/>
+ * Each prefetched content is handed out once (see {@link #take(String)}) and the content waiting to be opened is kept
+ * under {@link DatabaseConfig#getPrefetchMaxBytes()}, and dropped after {@link DatabaseConfig#getPrefetchMaxAge()}.
+ * The files already opened through the directory are not prefetched again.
+ *
+ */
+public class DatabasePrefetchCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabasePrefetchCache.class);
+    private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+
+    private final DatabaseDirectory directory;
+    private final Map<String, Prefetched> contents = new HashMap<String, Prefetched>();
+    private final Set<String> opened = new HashSet<String>();
+    private long bytes = 0;
+
+    public DatabasePrefetchCache(final DatabaseDirectory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Fetches the given files in batches of {@link DatabaseConfig#getPrefetchBatchSize()}, one query per batch.
+     *
+     * @param names
+     * @throws DatabaseDirectoryException
+     */
+    public void prefetch(final Collection<String> names) throws DatabaseDirectoryException {
+        final DatabaseConfig config = directory.getConfig();
+        final List<String> batch = new ArrayList<String>(config.getPrefetchBatchSize());
+        for (final String name : names) {
+            if (!DatabaseBlockCache.isCacheable(name) || contains(name) || isOpened(name)) {
+                continue;
+            }
+            batch.add(name);
+            if (batch.size() == config.getPrefetchBatchSize()) {
+                fetch(batch, config.getPrefetchMaxBytes());
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            fetch(batch, config.getPrefetchMaxBytes());
+        }
+    }
+
+    private void fetch(final List<String> batch, final long maxBytes) throws DatabaseDirectoryException {
+        final long remaining = maxBytes - getBytes();
+        if (remaining <= 0) {
+            return;
+        }
+        final Map<String, byte[]> fetched = handler.fileContents(directory, batch, remaining);
+        LOGGER.debug("{}.fetch({}) = {}", this, batch, fetched.keySet());
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (final Map.Entry<String, byte[]> entry : fetched.entrySet()) {
+                final Prefetched previous = contents.put(entry.getKey(), new Prefetched(entry.getValue(), now));
+                bytes += entry.getValue().length - (previous != null ? previous.content.length : 0);
+            }
+        }
+    }
+
+    private synchronized boolean contains(final String name) {
+        return contents.containsKey(name);
+    }
+
+    private synchronized boolean isOpened(final String name) {
+        return opened.contains(name);
+    }
+
+    private synchronized long getBytes() {
+        expire();
+        return bytes;
+    }
+
+    /**
+     * Drops the content waiting longer than {@link DatabaseConfig#getPrefetchMaxAge()}.
+     */
+    private void expire() {
+        final long oldest = System.currentTimeMillis() - directory.getConfig().getPrefetchMaxAge();
+        for (final Iterator<Prefetched> it = contents.values().iterator(); it.hasNext();) {
+            final Prefetched prefetched = it.next();
+            if (prefetched.time < oldest) {
+                it.remove();
+                bytes -= prefetched.content.length;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the prefetched content of a file, which is then known to be opened.
+     *
+     * @param name
+     * @return <code>null</code> if the file was not prefetched
+     */
+    public synchronized byte[] take(final String name) {
+        opened.add(name);
+        expire();
+        final Prefetched prefetched = contents.remove(name);
+        if (prefetched == null) {
+            return null;
+        }
+        bytes -= prefetched.content.length;
+        return prefetched.content;
+    }
+
+    /**
+     * Drops the content left by a previous prefetch, the reader it was fetched for is open.
+     */
+    public synchronized void clear() {
+        contents.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Drops the prefetched content of a deleted file.
+     *
+     * @param name
+     */
+    public synchronized void invalidate(final String name) {
+        final Prefetched prefetched = contents.remove(name);
+        if (prefetched != null) {
+            bytes -= prefetched.content.length;
+        }
+        opened.remove(name);
+    }
+
+    private static final class Prefetched {
+
+        private final byte[] content;
+        private final long time;
+
+        private Prefetched(final byte[] content, final long time) {
+            this.content = content;
+            this.time = time;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(directory).toString();
+    }
+}
@@ -0,0 +1,24 @@
+package pro.zhantss.lucene.store.database.config;
+
+/**
+ * How the chunk rows of a file are compressed with the {@link StorageLayout#CHUNKED} layout, see
+ * {@link DatabaseConfig#setChunkCompression(String, ChunkCompression)}.
+ *
+ */
+public enum ChunkCompression {
+
+    /**
+     * The chunks are stored as they are.
+     */
+    NONE,
+
+    /**
+     * LZ4, cheap to compress and very cheap to decompress. For the files read often, like the term dictionaries.
+     */
+    LZ4,
+
+    /**
+     * Deflate, smaller but slower than {@link #LZ4}. For the large files mostly read sequentially.
+     */
+    DEFLATE
+}
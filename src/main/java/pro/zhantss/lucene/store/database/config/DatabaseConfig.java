@@ -1,8 +1,11 @@
 package pro.zhantss.lucene.store.database.config;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Database config
@@ -17,10 +20,49 @@ public abstract class DatabaseConfig {
     protected static final String PROPERTY_SQL_SELECT_ALL = "sql.select.listall";
     protected static final String PROPERTY_SQL_SELECT_NAME = "sql.select.name";
     protected static final String PROPERTY_SQL_SELECT_SIZE = "sql.select.size";
+    protected static final String PROPERTY_SQL_SELECT_SIZES = "sql.select.sizes";
+    protected static final String PROPERTY_SQL_SELECT_VERSION = "sql.select.version";
+    protected static final String PROPERTY_SQL_SELECT_GENERATION = "sql.select.generation";
     protected static final String PROPERTY_SQL_SELECT_CONTENT = "sql.select.content";
+    protected static final String PROPERTY_SQL_SELECT_RANGE = "sql.select.range";
+    protected static final String PROPERTY_SQL_SELECT_FILE = "sql.select.file";
+    protected static final String PROPERTY_SQL_SELECT_FILES = "sql.select.files";
+    protected static final String PROPERTY_SQL_SELECT_FILE_SIZES = "sql.select.filesizes";
     protected static final String PROPERTY_SQL_INSERT = "sql.insert";
     protected static final String PROPERTY_SQL_UPDATE = "sql.update";
     protected static final String PROPERTY_SQL_DELETE = "sql.delete";
+    protected static final String PROPERTY_SQL_CHUNK_TABLE_EXISTS = "sql.chunk.table.exists";
+    protected static final String PROPERTY_SQL_CHUNK_TABLE_CREATE = "sql.chunk.table.create";
+    protected static final String PROPERTY_SQL_CHUNK_SELECT_RANGE = "sql.chunk.select.range";
+    protected static final String PROPERTY_SQL_CHUNK_INSERT = "sql.chunk.insert";
+    protected static final String PROPERTY_SQL_CHUNK_UPDATE = "sql.chunk.update";
+    protected static final String PROPERTY_SQL_CHUNK_DELETE = "sql.chunk.delete";
+    protected static final String PROPERTY_SQL_SPLIT_TABLE_CREATE = "sql.split.table.create";
+    protected static final String PROPERTY_SQL_SPLIT_INSERT = "sql.split.insert";
+    protected static final String PROPERTY_SQL_SPLIT_SELECT_GENERATION = "sql.split.select.generation";
+    protected static final String PROPERTY_SQL_SPLIT_SELECT_LAST_GENERATION = "sql.split.select.lastgeneration";
+    protected static final String PROPERTY_SQL_SPLIT_SELECT_FILE = "sql.split.select.file";
+    protected static final String PROPERTY_SQL_SPLIT_SELECT_VERSION = "sql.split.select.version";
+    protected static final String PROPERTY_SQL_SPLIT_SELECT_RANGE = "sql.split.select.range";
+    protected static final String PROPERTY_SQL_SPLIT_SELECT_FILES = "sql.split.select.files";
+    protected static final String PROPERTY_SQL_SPLIT_CONTENT_TABLE_CREATE = "sql.split.content.table.create";
+    protected static final String PROPERTY_SQL_SPLIT_CONTENT_TABLE_EXISTS = "sql.split.content.table.exists";
+    protected static final String PROPERTY_SQL_SPLIT_CONTENT_SELECT = "sql.split.content.select";
+    protected static final String PROPERTY_SQL_SPLIT_CONTENT_INSERT = "sql.split.content.insert";
+    protected static final String PROPERTY_SQL_SPLIT_CONTENT_UPDATE = "sql.split.content.update";
+    protected static final String PROPERTY_SQL_SPLIT_CONTENT_DELETE = "sql.split.content.delete";
+    protected static final String PROPERTY_SQL_DEDUP_TABLE_CREATE = "sql.dedup.table.create";
+    protected static final String PROPERTY_SQL_DEDUP_INSERT = "sql.dedup.insert";
+    protected static final String PROPERTY_SQL_DEDUP_SELECT_HASH = "sql.dedup.select.hash";
+    protected static final String PROPERTY_SQL_DEDUP_SELECT_CONTENT = "sql.dedup.select.content";
+    protected static final String PROPERTY_SQL_DEDUP_SELECT_FILE = "sql.dedup.select.file";
+    protected static final String PROPERTY_SQL_DEDUP_SELECT_FILES = "sql.dedup.select.files";
+    protected static final String PROPERTY_SQL_DEDUP_CONTENT_TABLE_EXISTS = "sql.dedup.content.table.exists";
+    protected static final String PROPERTY_SQL_DEDUP_CONTENT_TABLE_CREATE = "sql.dedup.content.table.create";
+    protected static final String PROPERTY_SQL_DEDUP_CONTENT_ACQUIRE = "sql.dedup.content.acquire";
+    protected static final String PROPERTY_SQL_DEDUP_CONTENT_INSERT = "sql.dedup.content.insert";
+    protected static final String PROPERTY_SQL_DEDUP_CONTENT_RELEASE = "sql.dedup.content.release";
+    protected static final String PROPERTY_SQL_DEDUP_CONTENT_PURGE = "sql.dedup.content.purge";
 
     protected final Properties properties;
 
@@ -31,6 +73,136 @@ public abstract class DatabaseConfig {
 
     private long threshold;
 
+    /**
+     * The default size of a chunk row (in bytes) for the {@link StorageLayout#CHUNKED} layout. Currently 64K.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private StorageLayout storageLayout = StorageLayout.BLOB;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Read for every chunk, by the upload threads too.
+     */
+    private final ConcurrentMap<String, ChunkCompression> chunkCompressions =
+            new ConcurrentHashMap<String, ChunkCompression>();
+
+    private volatile boolean chunkCompressed = false;
+
+    /**
+     * The default name of the content table of the {@link StorageLayout#DEDUPLICATED} layout.
+     */
+    public static final String DEFAULT_CONTENT_TABLE_NAME = "lucene_content";
+
+    private String contentTableName = DEFAULT_CONTENT_TABLE_NAME;
+
+    private File localCachePath;
+
+    private boolean directContent = false;
+
+    private UploadMode uploadMode = UploadMode.STREAM;
+
+    /**
+     * The default number of files fetched by a single prefetch query.
+     */
+    public static final int DEFAULT_PREFETCH_BATCH_SIZE = 100;
+
+    /**
+     * The default budget (in bytes) of the prefetched content not opened yet. Currently 64M.
+     */
+    public static final long DEFAULT_PREFETCH_MAX_BYTES = 64 * 1024 * 1024;
+
+    private int prefetchBatchSize = DEFAULT_PREFETCH_BATCH_SIZE;
+
+    private long prefetchMaxBytes = DEFAULT_PREFETCH_MAX_BYTES;
+
+    /**
+     * The default time (in milliseconds) prefetched content waits to be opened before it is dropped.
+     */
+    public static final long DEFAULT_PREFETCH_MAX_AGE = 10 * 1000;
+
+    private long prefetchMaxAge = DEFAULT_PREFETCH_MAX_AGE;
+
+    private boolean prefetchOnCommit = false;
+
+    /**
+     * The default number of blocks fetched ahead of a sequential read.
+     */
+    public static final int DEFAULT_READ_AHEAD_BLOCKS = 4;
+
+    /**
+     * The default size (in bytes) of the blocks of a sequential read. Currently 128K.
+     */
+    public static final int DEFAULT_READ_AHEAD_BLOCK_SIZE = 128 * 1024;
+
+    private int readAheadBlocks = DEFAULT_READ_AHEAD_BLOCKS;
+
+    private int readAheadBlockSize = DEFAULT_READ_AHEAD_BLOCK_SIZE;
+
+    /**
+     * The default interval (in milliseconds) between two checks of the table for changes made by other processes,
+     * negative: the catalog is disabled, every call queries the table.
+     */
+    public static final long DEFAULT_CATALOG_REFRESH_INTERVAL = -1;
+
+    private long catalogRefreshInterval = DEFAULT_CATALOG_REFRESH_INTERVAL;
+
+    /**
+     * The default number of files of which the write-behind upload may be pending.
+     */
+    public static final int DEFAULT_WRITE_BEHIND_MAX_PENDING = 8;
+
+    private boolean writeBehind = false;
+
+    private int writeBehindMaxPending = DEFAULT_WRITE_BEHIND_MAX_PENDING;
+
+    /**
+     * The default number of bytes of which the write-behind upload may be pending. Currently 256M.
+     */
+    public static final long DEFAULT_WRITE_BEHIND_MAX_PENDING_BYTES = 256L * 1024 * 1024;
+
+    private long writeBehindMaxPendingBytes = DEFAULT_WRITE_BEHIND_MAX_PENDING_BYTES;
+
+    /**
+     * The default number of write-behind uploads run at once.
+     */
+    public static final int DEFAULT_UPLOAD_THREADS = 2;
+
+    private int uploadThreads = DEFAULT_UPLOAD_THREADS;
+
+    /**
+     * The default minimum number of idle connections kept by the connection pool.
+     */
+    public static final int DEFAULT_CONNECTION_POOL_MIN_IDLE = 1;
+
+    /**
+     * The default time (in milliseconds) after which an idle pooled connection is closed. Currently 10 minutes.
+     */
+    public static final long DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT = 10 * 60 * 1000;
+
+    /**
+     * The default time (in milliseconds) a pooled connection may stay idle before it is validated again.
+     */
+    public static final long DEFAULT_CONNECTION_POOL_VALIDATION_INTERVAL = 30 * 1000;
+
+    /**
+     * The default time (in milliseconds) to wait for a pooled connection when all of them are in use.
+     */
+    public static final long DEFAULT_CONNECTION_POOL_TIMEOUT = 30 * 1000;
+
+    private int connectionPoolSize = 0;
+
+    private int connectionPoolMinIdle = DEFAULT_CONNECTION_POOL_MIN_IDLE;
+
+    private long connectionPoolIdleTimeout = DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT;
+
+    private long connectionPoolValidationInterval = DEFAULT_CONNECTION_POOL_VALIDATION_INTERVAL;
+
+    private long connectionPoolTimeout = DEFAULT_CONNECTION_POOL_TIMEOUT;
+
+    private boolean transactionalCommit = false;
+
     /**
      * @param config
      */
@@ -67,6 +239,21 @@ public abstract class DatabaseConfig {
         return true;
     }
 
+    /**
+     * Does the database support a query returning a range of the content (see {@link #sqlSelectRange(String)}).
+     * Otherwise the range is read through the <code>java.sql.Blob</code> of {@link #sqlSelectContent(String)}.
+     *
+     * @return
+     */
+    public boolean supportsSelectRange() {
+        if (isDeduplicated()) {
+            return false;
+        }
+        final String sqlSelectRange =
+                properties.getProperty(isSplit() ? PROPERTY_SQL_SPLIT_SELECT_RANGE : PROPERTY_SQL_SELECT_RANGE);
+        return sqlSelectRange != null && sqlSelectRange.trim().length() > 0;
+    }
+
    /* *//**
      * @return
      *//*
@@ -89,80 +276,855 @@ public abstract class DatabaseConfig {
     }
 
     /**
-     * If the database support a special query to check if a table exists, the
-     * actual sql that is used to perform it. Defaults to throw an Unsupported
-     * excetion (see {@link #supportsTableExists()}.
+     * @return
+     */
+    public final StorageLayout getStorageLayout() {
+        return storageLayout;
+    }
+
+    /**
+     * Changes the layout used to store the files. Must match the layout the index table was created with.
      *
-     * @param tableName
-     * @param schemaName
+     * @param storageLayout
+     */
+    public final void setStorageLayout(final StorageLayout storageLayout) {
+        this.storageLayout = storageLayout;
+    }
+
+    /**
+     * @return <code>true</code> if the files are stored as chunk rows
+     */
+    public final boolean isChunked() {
+        return storageLayout == StorageLayout.CHUNKED;
+    }
+
+    /**
+     * @return <code>true</code> if the metadata and the content of the files are stored in separate tables
+     */
+    public final boolean isSplit() {
+        return storageLayout == StorageLayout.SPLIT;
+    }
+
+    /**
+     * @return <code>true</code> if the content of the files is stored in the shared content table
+     */
+    public final boolean isDeduplicated() {
+        return storageLayout == StorageLayout.DEDUPLICATED;
+    }
+
+    /**
      * @return
      */
-    public final String sqlTableExists(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_TABLE_EXISTS), tableName);
+    public final String getContentTableName() {
+        return contentTableName;
+    }
+
+    /**
+     * Changes the content table of the {@link StorageLayout#DEDUPLICATED} layout, the index tables sharing their
+     * content must use the same one. Defaults to {@link #DEFAULT_CONTENT_TABLE_NAME}.
+     *
+     * @param contentTableName
+     */
+    public final void setContentTableName(final String contentTableName) {
+        this.contentTableName = contentTableName;
     }
 
     /**
-     * @param tableName
      * @return
      */
-    public final String sqlTableCreate(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_TABLE_CREATE), tableName);
+    public final UploadMode getUploadMode() {
+        return uploadMode;
+    }
+
+    /**
+     * Changes how the content of the large files (written through a temporary file) is sent to the database.
+     * Defaults to {@link UploadMode#STREAM}.
+     *
+     * @param uploadMode
+     */
+    public final void setUploadMode(final UploadMode uploadMode) {
+        this.uploadMode = uploadMode;
     }
 
     /**
-     * @param tableName
      * @return
      */
-    public final String sqlSelectAll(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_SELECT_ALL), tableName);
+    public final int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Changes the size of the chunk rows. Must match the chunk size the existing files were written with.
+     *
+     * @param chunkSize
+     */
+    public final void setChunkSize(final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param name
+     * @return the compression of the chunks of the file, by its extension
+     */
+    public final ChunkCompression getChunkCompression(final String name) {
+        final int dot = name.lastIndexOf('.');
+        final ChunkCompression compression = chunkCompressions.get(dot >= 0 ? name.substring(dot + 1) : "");
+        return compression != null ? compression : ChunkCompression.NONE;
+    }
+
+    /**
+     * @return <code>true</code> if the chunks of some files are compressed
+     */
+    public final boolean isChunkCompressed() {
+        return chunkCompressed;
+    }
+
+    /**
+     * Compresses each chunk row of the files with the given extension, for the {@link StorageLayout#CHUNKED} layout.
+     * The length of a file stays the uncompressed one, and a ranged read only decompresses the chunks it covers. Every
+     * chunk records how it is compressed, so the compressions can change between two runs, but the chunks of a chunk
+     * table created before the compression existed are never compressed.
+     *
+     * @param extension
+     *            the extension of the files without the dot (<code>tim</code>, <code>doc</code>...), empty for the
+     *            files without extension
+     * @param compression
+     */
+    public final synchronized void setChunkCompression(final String extension, final ChunkCompression compression) {
+        chunkCompressions.put(extension, compression);
+        boolean compressed = false;
+        for (final ChunkCompression value : chunkCompressions.values()) {
+            compressed |= value != ChunkCompression.NONE;
+        }
+        chunkCompressed = compressed;
     }
 
     /**
-     * @param tableName
      * @return
      */
-    public final String sqlSelectName(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_SELECT_NAME), tableName);
+    public final File getLocalCachePath() {
+        return localCachePath;
+    }
+
+    /**
+     * Enables the local disk cache: the files are downloaded once in a sub folder (named after the index table) of
+     * the given path and served memory mapped. <code>null</code> (the default) disables it.
+     *
+     * @param localCachePath
+     */
+    public final void setLocalCachePath(final File localCachePath) {
+        this.localCachePath = localCachePath;
     }
 
     /**
-     * @param tableName
      * @return
      */
-    public final String sqlSelectSize(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_SELECT_SIZE), tableName);
+    public final boolean isDirectContent() {
+        return directContent;
+    }
+
+    /**
+     * Keeps the content of the inputs that read the whole file in direct (off-heap) buffers instead of heap arrays.
+     * Defaults to <code>false</code>.
+     *
+     * @param directContent
+     */
+    public final void setDirectContent(final boolean directContent) {
+        this.directContent = directContent;
     }
 
     /**
-     * @param tableName
      * @return
      */
-    public final String sqlSelectContent(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_SELECT_CONTENT), tableName);
+    public final int getPrefetchBatchSize() {
+        return prefetchBatchSize;
+    }
+
+    /**
+     * @param prefetchBatchSize
+     *            the number of files fetched by a single prefetch query
+     */
+    public final void setPrefetchBatchSize(final int prefetchBatchSize) {
+        if (prefetchBatchSize <= 0) {
+            throw new IllegalArgumentException("Prefetch batch size must be positive: " + prefetchBatchSize);
+        }
+        this.prefetchBatchSize = prefetchBatchSize;
     }
 
     /**
-     * @param tableName
      * @return
      */
-    public final String sqlInsert(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_INSERT), tableName);
+    public final long getPrefetchMaxBytes() {
+        return prefetchMaxBytes;
+    }
+
+    /**
+     * @param prefetchMaxBytes
+     *            the budget of the prefetched content not opened yet, files beyond it are not prefetched
+     */
+    public final void setPrefetchMaxBytes(final long prefetchMaxBytes) {
+        this.prefetchMaxBytes = prefetchMaxBytes;
     }
 
     /**
-     * @param tableName
      * @return
      */
-    public final String sqlUpdate(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_UPDATE), tableName);
+    public final long getPrefetchMaxAge() {
+        return prefetchMaxAge;
+    }
+
+    /**
+     * The time (in milliseconds) prefetched content waits to be opened before it is dropped: a file of the table that
+     * the reader does not open is not kept until it is deleted.
+     *
+     * @param prefetchMaxAge
+     */
+    public final void setPrefetchMaxAge(final long prefetchMaxAge) {
+        if (prefetchMaxAge < 0) {
+            throw new IllegalArgumentException("Invalid prefetch max age: " + prefetchMaxAge);
+        }
+        this.prefetchMaxAge = prefetchMaxAge;
     }
 
     /**
-     * @param tableName
      * @return
      */
-    public final String sqlDelete(final String tableName) {
-        return String.format(properties.getProperty(PROPERTY_SQL_DELETE), tableName);
+    public final boolean isPrefetchOnCommit() {
+        return prefetchOnCommit;
+    }
+
+    /**
+     * Prefetch the files of the directory when a <code>segments_N</code> file is opened, as Lucene is about to open
+     * them one by one. The files already opened through the directory, which a reopened reader shares, are skipped, and
+     * what is left of the previous prefetch is dropped. Defaults to <code>false</code>.
+     *
+     * @param prefetchOnCommit
+     */
+    public final void setPrefetchOnCommit(final boolean prefetchOnCommit) {
+        this.prefetchOnCommit = prefetchOnCommit;
+    }
+
+    /**
+     * @return
+     */
+    public final int getReadAheadBlocks() {
+        return readAheadBlocks;
+    }
+
+    /**
+     * @param readAheadBlocks
+     *            the number of blocks fetched in the background ahead of a sequential read (merges), <code>0</code>
+     *            disables the read-ahead
+     */
+    public final void setReadAheadBlocks(final int readAheadBlocks) {
+        if (readAheadBlocks < 0) {
+            throw new IllegalArgumentException("Read-ahead blocks must not be negative: " + readAheadBlocks);
+        }
+        this.readAheadBlocks = readAheadBlocks;
+    }
+
+    /**
+     * @return
+     */
+    public final int getReadAheadBlockSize() {
+        return readAheadBlockSize;
+    }
+
+    /**
+     * @param readAheadBlockSize
+     *            the size of a block fetched ahead, in bytes
+     */
+    public final void setReadAheadBlockSize(final int readAheadBlockSize) {
+        if (readAheadBlockSize <= 0) {
+            throw new IllegalArgumentException("Read-ahead block size must be positive: " + readAheadBlockSize);
+        }
+        this.readAheadBlockSize = readAheadBlockSize;
+    }
+
+    /**
+     * @return
+     */
+    public final long getCatalogRefreshInterval() {
+        return catalogRefreshInterval;
+    }
+
+    /**
+     * The names and lengths of the files are kept in memory, and the table is checked for changes made by other
+     * processes at most once per interval, so a file written by another process may be seen up to this late. Disabled
+     * by default.
+     *
+     * @param catalogRefreshInterval
+     *            in milliseconds, <code>0</code> checks on every call, a negative value disables the catalog
+     */
+    public final void setCatalogRefreshInterval(final long catalogRefreshInterval) {
+        this.catalogRefreshInterval = catalogRefreshInterval;
+    }
+
+    /**
+     * @return <code>true</code> if the names and lengths of the files are kept in memory
+     */
+    public final boolean isCatalogEnabled() {
+        return catalogRefreshInterval >= 0;
+    }
+
+    /**
+     * @return
+     */
+    public final boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Closing an output queues the upload of the file in the background instead of waiting for it, the files are
+     * only durable once <code>sync</code> returned. Defaults to <code>false</code>.
+     *
+     * @param writeBehind
+     */
+    public final void setWriteBehind(final boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * @return
+     */
+    public final int getWriteBehindMaxPending() {
+        return writeBehindMaxPending;
+    }
+
+    /**
+     * @param writeBehindMaxPending
+     *            the number of files of which the upload may be pending, closing another output waits for a slot
+     */
+    public final void setWriteBehindMaxPending(final int writeBehindMaxPending) {
+        if (writeBehindMaxPending <= 0) {
+            throw new IllegalArgumentException("Write-behind max pending must be positive: " + writeBehindMaxPending);
+        }
+        this.writeBehindMaxPending = writeBehindMaxPending;
+    }
+
+    /**
+     * @return
+     */
+    public final long getWriteBehindMaxPendingBytes() {
+        return writeBehindMaxPendingBytes;
+    }
+
+    /**
+     * @param writeBehindMaxPendingBytes
+     *            the number of bytes of which the upload may be pending, closing another output waits until they
+     *            fit; a larger file is uploaded once nothing else is pending
+     */
+    public final void setWriteBehindMaxPendingBytes(final long writeBehindMaxPendingBytes) {
+        if (writeBehindMaxPendingBytes <= 0) {
+            throw new IllegalArgumentException("Write-behind max pending bytes must be positive: "
+                    + writeBehindMaxPendingBytes);
+        }
+        this.writeBehindMaxPendingBytes = writeBehindMaxPendingBytes;
+    }
+
+    /**
+     * @return
+     */
+    public final int getUploadThreads() {
+        return uploadThreads;
+    }
+
+    /**
+     * The number of write-behind uploads run at once, each on its own connection of the <code>DataSource</code>, so
+     * the files pending in a <code>sync</code> are uploaded in parallel. Ignored with {@link #isTransactionalCommit()}:
+     * the uploads share the connection of the transaction and are sent one at a time, by a single thread.
+     *
+     * @param uploadThreads
+     */
+    public final void setUploadThreads(final int uploadThreads) {
+        if (uploadThreads <= 0) {
+            throw new IllegalArgumentException("Upload threads must be positive: " + uploadThreads);
+        }
+        this.uploadThreads = uploadThreads;
+    }
+
+    /**
+     * @return
+     */
+    public final int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    /**
+     * The maximum number of connections the directory keeps open to the <code>DataSource</code>, reused between the
+     * statements instead of opening a connection for each of them. Defaults to <code>0</code>, no pool: the
+     * <code>DataSource</code> is used as is, as it should be when it already is a pool.
+     * <p/>
+     * The pool must cover the threads using the directory at once, the {@link #getUploadThreads()} and the connection
+     * of the transaction of {@link #isTransactionalCommit()}, the others wait up to {@link #getConnectionPoolTimeout()}.
+     *
+     * @param connectionPoolSize
+     * @see pro.zhantss.lucene.store.database.datasource.DatabaseConnectionPool
+     */
+    public final void setConnectionPoolSize(final int connectionPoolSize) {
+        if (connectionPoolSize < 0) {
+            throw new IllegalArgumentException("Invalid connection pool size: " + connectionPoolSize);
+        }
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    /**
+     * @return
+     */
+    public final int getConnectionPoolMinIdle() {
+        return connectionPoolMinIdle;
+    }
+
+    /**
+     * The number of idle connections that are not closed after {@link #getConnectionPoolIdleTimeout()}.
+     *
+     * @param connectionPoolMinIdle
+     */
+    public final void setConnectionPoolMinIdle(final int connectionPoolMinIdle) {
+        if (connectionPoolMinIdle < 0) {
+            throw new IllegalArgumentException("Invalid connection pool min idle: " + connectionPoolMinIdle);
+        }
+        this.connectionPoolMinIdle = connectionPoolMinIdle;
+    }
+
+    /**
+     * @return
+     */
+    public final long getConnectionPoolIdleTimeout() {
+        return connectionPoolIdleTimeout;
+    }
+
+    /**
+     * The time (in milliseconds) after which an idle pooled connection is closed, <code>0</code> keeps them open.
+     *
+     * @param connectionPoolIdleTimeout
+     */
+    public final void setConnectionPoolIdleTimeout(final long connectionPoolIdleTimeout) {
+        if (connectionPoolIdleTimeout < 0) {
+            throw new IllegalArgumentException("Invalid connection pool idle timeout: " + connectionPoolIdleTimeout);
+        }
+        this.connectionPoolIdleTimeout = connectionPoolIdleTimeout;
+    }
+
+    /**
+     * @return
+     */
+    public final long getConnectionPoolValidationInterval() {
+        return connectionPoolValidationInterval;
+    }
+
+    /**
+     * The time (in milliseconds) a pooled connection may stay idle before it is validated (with
+     * <code>Connection.isValid</code>) when it is taken again, <code>0</code> validates it every time.
+     *
+     * @param connectionPoolValidationInterval
+     */
+    public final void setConnectionPoolValidationInterval(final long connectionPoolValidationInterval) {
+        if (connectionPoolValidationInterval < 0) {
+            throw new IllegalArgumentException("Invalid connection pool validation interval: "
+                    + connectionPoolValidationInterval);
+        }
+        this.connectionPoolValidationInterval = connectionPoolValidationInterval;
+    }
+
+    /**
+     * @return
+     */
+    public final long getConnectionPoolTimeout() {
+        return connectionPoolTimeout;
+    }
+
+    /**
+     * The time (in milliseconds) to wait for a pooled connection when all of them are in use.
+     *
+     * @param connectionPoolTimeout
+     */
+    public final void setConnectionPoolTimeout(final long connectionPoolTimeout) {
+        if (connectionPoolTimeout < 0) {
+            throw new IllegalArgumentException("Invalid connection pool timeout: " + connectionPoolTimeout);
+        }
+        this.connectionPoolTimeout = connectionPoolTimeout;
+    }
+
+    /**
+     * @return
+     */
+    public final boolean isTransactionalCommit() {
+        return transactionalCommit;
+    }
+
+    /**
+     * The files written and deleted between two Lucene commits are stored in a single database transaction, committed
+     * when the next <code>segments_N</code> is saved: other processes see a commit at once or not at all. Defaults to
+     * <code>false</code>, every statement is committed on its own.
+     *
+     * @param transactionalCommit
+     */
+    public final void setTransactionalCommit(final boolean transactionalCommit) {
+        this.transactionalCommit = transactionalCommit;
+    }
+
+    private String format(final String property, final Object... args) {
+        return String.format(properties.getProperty(property), args);
+    }
+
+    /**
+     * If the database support a special query to check if a table exists, the
+     * actual sql that is used to perform it. Defaults to throw an Unsupported
+     * excetion (see {@link #supportsTableExists()}.
+     *
+     * @param tableName
+     * @param schemaName
+     * @return
+     */
+    public final String sqlTableExists(final String tableName) {
+        return format(PROPERTY_SQL_TABLE_EXISTS, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlTableCreate(final String tableName) {
+        if (isDeduplicated()) {
+            return format(PROPERTY_SQL_DEDUP_TABLE_CREATE, tableName);
+        }
+        if (isSplit()) {
+            return format(PROPERTY_SQL_SPLIT_TABLE_CREATE, tableName);
+        }
+        return format(PROPERTY_SQL_TABLE_CREATE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectAll(final String tableName) {
+        return format(PROPERTY_SQL_SELECT_ALL, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectName(final String tableName) {
+        return format(PROPERTY_SQL_SELECT_NAME, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectSize(final String tableName) {
+        return format(PROPERTY_SQL_SELECT_SIZE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectSizes(final String tableName) {
+        return format(PROPERTY_SQL_SELECT_SIZES, tableName);
+    }
+
+    /**
+     * Selects the size and the time a file was written, plus its checksum with the {@link StorageLayout#SPLIT}
+     * layout: changes whenever the file is written again.
+     *
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectVersion(final String tableName) {
+        if (isSplit()) {
+            return format(PROPERTY_SQL_SPLIT_SELECT_VERSION, tableName);
+        }
+        return format(PROPERTY_SQL_SELECT_VERSION, tableName);
+    }
+
+    /**
+     * A cheap aggregate over the table that changes whenever a file is added or deleted.
+     *
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectGeneration(final String tableName) {
+        if (isSplit()) {
+            return format(PROPERTY_SQL_SPLIT_SELECT_GENERATION, tableName);
+        }
+        return format(PROPERTY_SQL_SELECT_GENERATION, tableName);
+    }
+
+    /**
+     * Selects the highest generation of the {@link StorageLayout#SPLIT} metadata table, the next file saved taking
+     * the one after.
+     *
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectLastGeneration(final String tableName) {
+        return format(PROPERTY_SQL_SPLIT_SELECT_LAST_GENERATION, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectContent(final String tableName) {
+        if (isDeduplicated()) {
+            return format(PROPERTY_SQL_DEDUP_SELECT_CONTENT, tableName, contentTableName);
+        }
+        if (isSplit()) {
+            return format(PROPERTY_SQL_SPLIT_CONTENT_SELECT, tableName);
+        }
+        return format(PROPERTY_SQL_SELECT_CONTENT, tableName);
+    }
+
+    /**
+     * Selects the size and the content of a file in one query.
+     *
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectFile(final String tableName) {
+        if (isDeduplicated()) {
+            return format(PROPERTY_SQL_DEDUP_SELECT_FILE, tableName, contentTableName);
+        }
+        if (isSplit()) {
+            return format(PROPERTY_SQL_SPLIT_SELECT_FILE, tableName);
+        }
+        return format(PROPERTY_SQL_SELECT_FILE, tableName);
+    }
+
+    /**
+     * Selects the name, size and content of <code>count</code> files in one query.
+     *
+     * @param tableName
+     * @param count
+     * @return
+     */
+    public final String sqlSelectFiles(final String tableName, final int count) {
+        final String parameters = parameters(count);
+        if (isDeduplicated()) {
+            return format(PROPERTY_SQL_DEDUP_SELECT_FILES, tableName, contentTableName, parameters);
+        }
+        if (isSplit()) {
+            return format(PROPERTY_SQL_SPLIT_SELECT_FILES, tableName, parameters);
+        }
+        return format(PROPERTY_SQL_SELECT_FILES, tableName, parameters);
+    }
+
+    /**
+     * Selects the name and the size of <code>count</code> files, the parameters being their names.
+     *
+     * @param tableName
+     * @param count
+     * @return
+     */
+    public final String sqlSelectFileSizes(final String tableName, final int count) {
+        return format(PROPERTY_SQL_SELECT_FILE_SIZES, tableName, parameters(count));
+    }
+
+    private static String parameters(final int count) {
+        final StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            parameters.append(i == 0 ? "?" : ", ?");
+        }
+        return parameters.toString();
+    }
+
+    /**
+     * Selects <code>length</code> bytes of the content starting at the 1-based <code>offset</code>, the parameters
+     * being the offset, the length and the name.
+     *
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectRange(final String tableName) {
+        if (isSplit()) {
+            return format(PROPERTY_SQL_SPLIT_SELECT_RANGE, tableName);
+        }
+        return format(PROPERTY_SQL_SELECT_RANGE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlInsert(final String tableName) {
+        if (isDeduplicated()) {
+            return format(PROPERTY_SQL_DEDUP_INSERT, tableName);
+        }
+        if (isSplit()) {
+            return format(PROPERTY_SQL_SPLIT_INSERT, tableName);
+        }
+        return format(PROPERTY_SQL_INSERT, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlUpdate(final String tableName) {
+        return format(PROPERTY_SQL_UPDATE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlDelete(final String tableName) {
+        return format(PROPERTY_SQL_DELETE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSplitContentTableExists(final String tableName) {
+        return format(PROPERTY_SQL_SPLIT_CONTENT_TABLE_EXISTS, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSplitContentTableCreate(final String tableName) {
+        return format(PROPERTY_SQL_SPLIT_CONTENT_TABLE_CREATE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSplitContentInsert(final String tableName) {
+        return format(PROPERTY_SQL_SPLIT_CONTENT_INSERT, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSplitContentUpdate(final String tableName) {
+        return format(PROPERTY_SQL_SPLIT_CONTENT_UPDATE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlSplitContentDelete(final String tableName) {
+        return format(PROPERTY_SQL_SPLIT_CONTENT_DELETE, tableName);
+    }
+
+    /**
+     * Selects the content hash of a file of the {@link StorageLayout#DEDUPLICATED} layout.
+     *
+     * @param tableName
+     * @return
+     */
+    public final String sqlSelectHash(final String tableName) {
+        return format(PROPERTY_SQL_DEDUP_SELECT_HASH, tableName);
+    }
+
+    /**
+     * @return
+     */
+    public final String sqlContentTableExists() {
+        return format(PROPERTY_SQL_DEDUP_CONTENT_TABLE_EXISTS, contentTableName);
+    }
+
+    /**
+     * @return
+     */
+    public final String sqlContentTableCreate() {
+        return format(PROPERTY_SQL_DEDUP_CONTENT_TABLE_CREATE, contentTableName);
+    }
+
+    /**
+     * Increments the reference count of a stored content, the parameter being the hash.
+     *
+     * @return
+     */
+    public final String sqlContentAcquire() {
+        return format(PROPERTY_SQL_DEDUP_CONTENT_ACQUIRE, contentTableName);
+    }
+
+    /**
+     * Stores a new content with one reference, the parameters being the hash, the content and the size.
+     *
+     * @return
+     */
+    public final String sqlContentInsert() {
+        return format(PROPERTY_SQL_DEDUP_CONTENT_INSERT, contentTableName);
+    }
+
+    /**
+     * Decrements the reference count of a stored content, the parameter being the hash.
+     *
+     * @return
+     */
+    public final String sqlContentRelease() {
+        return format(PROPERTY_SQL_DEDUP_CONTENT_RELEASE, contentTableName);
+    }
+
+    /**
+     * Deletes a stored content once no longer referenced, the parameter being the hash.
+     *
+     * @return
+     */
+    public final String sqlContentPurge() {
+        return format(PROPERTY_SQL_DEDUP_CONTENT_PURGE, contentTableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlChunkTableExists(final String tableName) {
+        return format(PROPERTY_SQL_CHUNK_TABLE_EXISTS, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlChunkTableCreate(final String tableName) {
+        return format(PROPERTY_SQL_CHUNK_TABLE_CREATE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlChunkSelectRange(final String tableName) {
+        return format(PROPERTY_SQL_CHUNK_SELECT_RANGE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlChunkInsert(final String tableName) {
+        return format(PROPERTY_SQL_CHUNK_INSERT, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlChunkUpdate(final String tableName) {
+        return format(PROPERTY_SQL_CHUNK_UPDATE, tableName);
+    }
+
+    /**
+     * @param tableName
+     * @return
+     */
+    public final String sqlChunkDelete(final String tableName) {
+        return format(PROPERTY_SQL_CHUNK_DELETE, tableName);
     }
 
     @Override
@@ -0,0 +1,320 @@
+package pro.zhantss.lucene.store.database.config;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The sql of the statements of one index table, resolved from its {@link DatabaseConfig} once when the directory is
+ * created rather than formatted for every statement. The creation statements, run once, stay on the config.
+ * <p/>
+ * The queries of several files (see {@link #sqlSelectFiles(int)}) are resolved on first use for every number of files
+ * up to {@link #MAX_CACHED_FILES}.
+ *
+ */
+public class DatabaseSql {
+
+    /**
+     * The highest number of files of which the queries are kept.
+     */
+    public static final int MAX_CACHED_FILES = 64;
+
+    private final DatabaseConfig config;
+    private final String tableName;
+
+    private final String sqlSelectAll;
+    private final String sqlSelectName;
+    private final String sqlSelectSize;
+    private final String sqlSelectSizes;
+    private final String sqlSelectVersion;
+    private final String sqlSelectGeneration;
+    private final String sqlSelectLastGeneration;
+    private final String sqlSelectContent;
+    private final String sqlSelectFile;
+    private final String sqlSelectRange;
+    private final String sqlInsert;
+    private final String sqlUpdate;
+    private final String sqlDelete;
+    private final String sqlSplitContentInsert;
+    private final String sqlSplitContentUpdate;
+    private final String sqlSplitContentDelete;
+    private final String sqlSelectHash;
+    private final String sqlContentAcquire;
+    private final String sqlContentInsert;
+    private final String sqlContentRelease;
+    private final String sqlContentPurge;
+    private final String sqlChunkSelectRange;
+    private final String sqlChunkInsert;
+    private final String sqlChunkUpdate;
+    private final String sqlChunkDelete;
+
+    private final AtomicReferenceArray<String> sqlSelectFiles = new AtomicReferenceArray<String>(MAX_CACHED_FILES + 1);
+    private final AtomicReferenceArray<String> sqlSelectFileSizes =
+            new AtomicReferenceArray<String>(MAX_CACHED_FILES + 1);
+
+    /**
+     * @param config
+     * @param tableName
+     */
+    public DatabaseSql(final DatabaseConfig config, final String tableName) {
+        this.config = config;
+        this.tableName = tableName;
+        sqlSelectAll = config.sqlSelectAll(tableName);
+        sqlSelectName = config.sqlSelectName(tableName);
+        sqlSelectSize = config.sqlSelectSize(tableName);
+        sqlSelectSizes = config.sqlSelectSizes(tableName);
+        sqlSelectVersion = config.sqlSelectVersion(tableName);
+        sqlSelectGeneration = config.sqlSelectGeneration(tableName);
+        sqlSelectLastGeneration = config.sqlSelectLastGeneration(tableName);
+        sqlSelectContent = config.sqlSelectContent(tableName);
+        sqlSelectFile = config.sqlSelectFile(tableName);
+        sqlSelectRange = config.supportsSelectRange() ? config.sqlSelectRange(tableName) : null;
+        sqlInsert = config.sqlInsert(tableName);
+        sqlUpdate = config.sqlUpdate(tableName);
+        sqlDelete = config.sqlDelete(tableName);
+        sqlSplitContentInsert = config.sqlSplitContentInsert(tableName);
+        sqlSplitContentUpdate = config.sqlSplitContentUpdate(tableName);
+        sqlSplitContentDelete = config.sqlSplitContentDelete(tableName);
+        sqlSelectHash = config.sqlSelectHash(tableName);
+        sqlContentAcquire = config.sqlContentAcquire();
+        sqlContentInsert = config.sqlContentInsert();
+        sqlContentRelease = config.sqlContentRelease();
+        sqlContentPurge = config.sqlContentPurge();
+        sqlChunkSelectRange = config.sqlChunkSelectRange(tableName);
+        sqlChunkInsert = config.sqlChunkInsert(tableName);
+        sqlChunkUpdate = config.sqlChunkUpdate(tableName);
+        sqlChunkDelete = config.sqlChunkDelete(tableName);
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectAll(String)
+     * @return
+     */
+    public final String sqlSelectAll() {
+        return sqlSelectAll;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectName(String)
+     * @return
+     */
+    public final String sqlSelectName() {
+        return sqlSelectName;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectSize(String)
+     * @return
+     */
+    public final String sqlSelectSize() {
+        return sqlSelectSize;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectSizes(String)
+     * @return
+     */
+    public final String sqlSelectSizes() {
+        return sqlSelectSizes;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectVersion(String)
+     * @return
+     */
+    public final String sqlSelectVersion() {
+        return sqlSelectVersion;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectGeneration(String)
+     * @return
+     */
+    public final String sqlSelectGeneration() {
+        return sqlSelectGeneration;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectLastGeneration(String)
+     * @return
+     */
+    public final String sqlSelectLastGeneration() {
+        return sqlSelectLastGeneration;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectContent(String)
+     * @return
+     */
+    public final String sqlSelectContent() {
+        return sqlSelectContent;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectFile(String)
+     * @return
+     */
+    public final String sqlSelectFile() {
+        return sqlSelectFile;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectFiles(String, int)
+     * @param count
+     * @return
+     */
+    public final String sqlSelectFiles(final int count) {
+        if (count > MAX_CACHED_FILES) {
+            return config.sqlSelectFiles(tableName, count);
+        }
+        String sql = sqlSelectFiles.get(count);
+        if (sql == null) {
+            sql = config.sqlSelectFiles(tableName, count);
+            sqlSelectFiles.set(count, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectFileSizes(String, int)
+     * @param count
+     * @return
+     */
+    public final String sqlSelectFileSizes(final int count) {
+        if (count > MAX_CACHED_FILES) {
+            return config.sqlSelectFileSizes(tableName, count);
+        }
+        String sql = sqlSelectFileSizes.get(count);
+        if (sql == null) {
+            sql = config.sqlSelectFileSizes(tableName, count);
+            sqlSelectFileSizes.set(count, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectRange(String)
+     * @return <code>null</code> unless {@link DatabaseConfig#supportsSelectRange()}
+     */
+    public final String sqlSelectRange() {
+        return sqlSelectRange;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlInsert(String)
+     * @return
+     */
+    public final String sqlInsert() {
+        return sqlInsert;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlUpdate(String)
+     * @return
+     */
+    public final String sqlUpdate() {
+        return sqlUpdate;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlDelete(String)
+     * @return
+     */
+    public final String sqlDelete() {
+        return sqlDelete;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSplitContentInsert(String)
+     * @return
+     */
+    public final String sqlSplitContentInsert() {
+        return sqlSplitContentInsert;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSplitContentUpdate(String)
+     * @return
+     */
+    public final String sqlSplitContentUpdate() {
+        return sqlSplitContentUpdate;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSplitContentDelete(String)
+     * @return
+     */
+    public final String sqlSplitContentDelete() {
+        return sqlSplitContentDelete;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlSelectHash(String)
+     * @return
+     */
+    public final String sqlSelectHash() {
+        return sqlSelectHash;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlContentAcquire()
+     * @return
+     */
+    public final String sqlContentAcquire() {
+        return sqlContentAcquire;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlContentInsert()
+     * @return
+     */
+    public final String sqlContentInsert() {
+        return sqlContentInsert;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlContentRelease()
+     * @return
+     */
+    public final String sqlContentRelease() {
+        return sqlContentRelease;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlContentPurge()
+     * @return
+     */
+    public final String sqlContentPurge() {
+        return sqlContentPurge;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlChunkSelectRange(String)
+     * @return
+     */
+    public final String sqlChunkSelectRange() {
+        return sqlChunkSelectRange;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlChunkInsert(String)
+     * @return
+     */
+    public final String sqlChunkInsert() {
+        return sqlChunkInsert;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlChunkUpdate(String)
+     * @return
+     */
+    public final String sqlChunkUpdate() {
+        return sqlChunkUpdate;
+    }
+
+    /**
+     * @see DatabaseConfig#sqlChunkDelete(String)
+     * @return
+     */
+    public final String sqlChunkDelete() {
+        return sqlChunkDelete;
+    }
+}
@@ -0,0 +1,34 @@
+package pro.zhantss.lucene.store.database.config;
+
+/**
+ * How the content of a Lucene file is laid out in the index table.
+ *
+ */
+public enum StorageLayout {
+
+    /**
+     * Every file is a single row, the whole content is stored in one blob.
+     */
+    BLOB,
+
+    /**
+     * Every file is a metadata row in the index table (without content) plus a sequence of fixed-size chunk rows
+     * (name, chunk number, content) in the <code>&lt;table&gt;_chunks</code> table, see
+     * {@link DatabaseConfig#getChunkSize()}. Inputs only fetch the chunks covering the requested range.
+     */
+    CHUNKED,
+
+    /**
+     * Every file is a row of the index table referencing its content by SHA-256 hash, the content being stored once
+     * in the content table shared by all the index tables (see {@link DatabaseConfig#getContentTableName()}) with a
+     * reference count. Saving a file of which the content is already stored only inserts the index row.
+     */
+    DEDUPLICATED,
+
+    /**
+     * Every file is a row of a narrow metadata table (name, size, checksum, generation, updated) plus a content row
+     * in the <code>&lt;table&gt;_content</code> table. Listing, lengths, existence checks and locks only query the
+     * metadata table, which stays small and is never locked by the blob writes.
+     */
+    SPLIT
+}
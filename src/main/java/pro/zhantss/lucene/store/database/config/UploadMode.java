@@ -0,0 +1,27 @@
+package pro.zhantss.lucene.store.database.config;
+
+/**
+ * How the content of a file written as a stream is handed to the JDBC driver.
+ *
+ */
+public enum UploadMode {
+
+    /**
+     * The whole content is read into a <code>byte[]</code> and bound with <code>setBytes</code>. Needs as much heap
+     * as the file is large, only for drivers that do not support the other modes.
+     */
+    BYTES,
+
+    /**
+     * The stream is bound with <code>setBinaryStream(index, stream, length)</code> (JDBC 4.0), the driver reads it
+     * while sending.
+     */
+    STREAM,
+
+    /**
+     * The stream is copied into a <code>Blob</code> created by the connection, and the locator is bound with
+     * <code>setBlob</code>. For the drivers that buffer a bound stream but write a locator to the database directly
+     * (Oracle, DB2).
+     */
+    LOCATOR
+}
@@ -46,7 +46,9 @@ public class DataSourceUtils {
      * <p/>
      * Will only close the connection under two conditions: If the connection was not created by the
      * {@link TransactionAwareDataSourceProxy}, or if it was created by {@link TransactionAwareDataSourceProxy}, and the
-     * connection controls the connection (i.e. it is the most outer connection created).
+     * connection controls the connection (i.e. it is the most outer connection created). The statements cached for the
+     * connection by the {@link DatabaseStatementCache} are closed first, unless the connection only returns to a
+     * {@link DatabaseConnectionPool}.
      *
      * @param connection
      * @throws DatabaseDirectoryException
@@ -56,6 +58,10 @@ public class DataSourceUtils {
             return;
         }
         if (!(connection instanceof ConnectionProxy) || isControlConnection(connection)) {
+            if (!DatabaseConnectionPool.isPooled(connection)) {
+                // only statements prepared through a transaction on this physical connection can be cached
+                DatabaseStatementCache.INSTANCE.evict(connection);
+            }
             try {
                 connection.close();
             } catch (final SQLException e) {
@@ -67,14 +73,15 @@ public class DataSourceUtils {
     /**
      * Commits the connection only if the connection is controlled by us. The connection is controlled if it is the
      * <code>TransactionAwareDataSourceProxy</code> and it is the most outer connection in the tree of connections the
-     * <code>TransactionAwareDataSourceProxy</code> returned.
+     * <code>TransactionAwareDataSourceProxy</code> returned. A connection in auto-commit mode (such as the ones of the
+     * {@link DatabaseConnectionPool}) has nothing to commit.
      *
      * @param connection
      * @throws DatabaseDirectoryException
      */
     public static void commitConnection(final Connection connection) throws DatabaseDirectoryException {
         try {
-            if (connection != null && isControlConnection(connection)) {
+            if (connection != null && isControlConnection(connection) && !connection.getAutoCommit()) {
                 connection.commit();
             }
         } catch (final SQLException e) {
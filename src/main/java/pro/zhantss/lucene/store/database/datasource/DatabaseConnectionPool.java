@@ -0,0 +1,468 @@
+package pro.zhantss.lucene.store.database.datasource;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small bounded pool of the connections of a target <code>DataSource</code>, used by a
+ * {@link pro.zhantss.lucene.store.database.DatabaseDirectory} given a plain driver <code>DataSource</code> (see
+ * {@link pro.zhantss.lucene.store.database.config.DatabaseConfig#getConnectionPoolSize()}), so that every statement does
+ * not open a physical connection. It is not meant to wrap a {@link TransactionAwareDataSourceProxy} or a
+ * <code>DataSource</code> that already pools its connections.
+ * <p/>
+ * The connections are handed out as a {@link ConnectionProxy} controlling the connection: closing it returns the
+ * connection to the pool, rolled back and in auto-commit mode, and the {@link DatabaseStatementCache} keeps its
+ * statements. The idle connections are reused most recent first, validated when they were idle longer than the
+ * validation interval, and the ones idle longer than the idle timeout are closed (down to the minimum idle) when a
+ * connection is taken: the pool runs no thread of its own.
+ * <p/>
+ * A thread can pin a connection with {@link #pin()}: until the matching {@link #unpin()}, {@link #getConnection()}
+ * returns the same connection, as a non controlling {@link ConnectionProxy}, to the statements of a burst of
+ * operations.
+ *
+ */
+public class DatabaseConnectionPool implements DataSource {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(DatabaseConnectionPool.class);
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final int minIdle;
+    private final long idleTimeout;
+    private final long validationInterval;
+    private final long timeout;
+
+    /**
+     * The idle connections, the most recently returned first.
+     */
+    private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+    private int size = 0;
+    private boolean closed = false;
+
+    private final ThreadLocal<Pin> pins = new ThreadLocal<Pin>();
+
+    /**
+     * @param dataSource
+     *            the data source of the physical connections
+     * @param maxSize
+     *            the maximum number of open connections
+     * @param minIdle
+     *            the number of idle connections kept beyond the idle timeout
+     * @param idleTimeout
+     *            the time (in milliseconds) after which an idle connection is closed, <code>0</code> for never
+     * @param validationInterval
+     *            the time (in milliseconds) a connection may stay idle without being validated
+     * @param timeout
+     *            the time (in milliseconds) to wait for a connection when all of them are in use
+     */
+    public DatabaseConnectionPool(final DataSource dataSource, final int maxSize, final int minIdle,
+            final long idleTimeout, final long validationInterval, final long timeout) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Connection pool size must be positive: " + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.minIdle = minIdle;
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the target data source.
+     */
+    public DataSource getTargetDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * @return the number of open connections, in use or idle
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of idle connections
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Returns <code>true</code> if the connection, or one it wraps, was handed out by a connection pool: closing it
+     * does not close the physical connection.
+     *
+     * @param connection
+     * @return
+     */
+    public static boolean isPooled(final Connection connection) {
+        Connection target = connection;
+        while (target instanceof ConnectionProxy) {
+            if (target instanceof PooledConnectionProxy) {
+                return true;
+            }
+            target = ((ConnectionProxy) target).getTargetConnection();
+        }
+        return false;
+    }
+
+    /**
+     * The pinned connection of the thread if any, otherwise a connection of the pool.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        final Pin pin = pins.get();
+        if (pin == null) {
+            return getUnpinnedConnection();
+        }
+        if (pin.connection == null) {
+            pin.connection = new PinnedConnectionProxy(getUnpinnedConnection());
+        }
+        return pin.connection;
+    }
+
+    /**
+     * Not supported, the connections of the pool are all opened with the credentials of the target data source.
+     */
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connections with other credentials are not pooled: " + this);
+    }
+
+    /**
+     * A connection of the pool, never the pinned one: for the connections held beyond the current operation, such as
+     * the one of a {@link pro.zhantss.lucene.store.database.handler.DatabaseTransaction}.
+     *
+     * @return
+     * @throws SQLException
+     */
+    public Connection getUnpinnedConnection() throws SQLException {
+        return new PooledConnectionProxy(borrow());
+    }
+
+    /**
+     * Pins a connection to the current thread until the matching {@link #unpin()}. The connection is taken from the
+     * pool by the first statement. Pins nest.
+     */
+    public void pin() {
+        Pin pin = pins.get();
+        if (pin == null) {
+            pin = new Pin();
+            pins.set(pin);
+        }
+        pin.depth++;
+    }
+
+    /**
+     * Releases the pin of the current thread, the outer most one returns the connection to the pool.
+     */
+    public void unpin() {
+        final Pin pin = pins.get();
+        if (pin == null) {
+            throw new IllegalStateException("No connection pinned to thread [" + Thread.currentThread().getName()
+                    + "]: " + this);
+        }
+        if (--pin.depth > 0) {
+            return;
+        }
+        pins.remove();
+        if (pin.connection != null) {
+            try {
+                pin.connection.getTargetConnection().close();
+            } catch (final SQLException e) {
+                LOGGER.warn("{}: failed to release the pinned connection: {}", this, e.getMessage());
+            }
+        }
+    }
+
+    private PooledConnection borrow() throws SQLException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            PooledConnection pooled = null;
+            boolean open = false;
+            final List<PooledConnection> expired;
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLException("Connection pool is closed: " + this);
+                }
+                expired = expire();
+                if (!idle.isEmpty()) {
+                    pooled = idle.removeFirst();
+                } else if (size < maxSize) {
+                    size++;
+                    open = true;
+                } else {
+                    final long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new SQLException("Timed out waiting for a connection, " + size + " in use: " + this);
+                    }
+                    try {
+                        wait(wait);
+                    } catch (final InterruptedException e) {
+                        throw new ThreadInterruptedException(e);
+                    }
+                }
+            }
+            for (final PooledConnection connection : expired) {
+                closeConnection(connection.target);
+            }
+            if (open) {
+                return open();
+            }
+            if (pooled != null) {
+                if (validate(pooled)) {
+                    return pooled;
+                }
+                discard(pooled);
+            }
+        }
+    }
+
+    /**
+     * Opens a physical connection, once the room for it is taken.
+     */
+    private PooledConnection open() throws SQLException {
+        Connection target = null;
+        try {
+            target = dataSource.getConnection();
+            if (!target.getAutoCommit()) {
+                target.setAutoCommit(true);
+            }
+            LOGGER.debug("{}: opened a connection", this);
+            return new PooledConnection(target);
+        } catch (final SQLException e) {
+            if (target != null) {
+                closeConnection(target);
+            }
+            release();
+            throw e;
+        } catch (final RuntimeException e) {
+            if (target != null) {
+                closeConnection(target);
+            }
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * The idle connections past the idle timeout, beyond the minimum idle, removed from the pool.
+     */
+    private List<PooledConnection> expire() {
+        final List<PooledConnection> expired = new ArrayList<PooledConnection>();
+        if (idleTimeout <= 0) {
+            return expired;
+        }
+        final long now = System.currentTimeMillis();
+        while (idle.size() > minIdle && now - idle.getLast().lastUsed > idleTimeout) {
+            expired.add(idle.removeLast());
+            size--;
+        }
+        return expired;
+    }
+
+    private boolean validate(final PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed <= validationInterval) {
+            return true;
+        }
+        try {
+            return pooled.target.isValid(5);
+        } catch (final SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a connection to the pool, rolled back and in auto-commit mode, or closes it if it is broken or the pool
+     * is closed.
+     */
+    private void giveBack(final PooledConnection pooled) {
+        boolean reusable;
+        try {
+            if (!pooled.target.getAutoCommit()) {
+                pooled.target.rollback();
+                pooled.target.setAutoCommit(true);
+            }
+            reusable = true;
+        } catch (final SQLException e) {
+            LOGGER.debug("{}: discarding a connection: {}", this, e.getMessage());
+            reusable = false;
+        }
+        synchronized (this) {
+            if (reusable && !closed) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pooled);
+                notifyAll();
+                return;
+            }
+        }
+        discard(pooled);
+    }
+
+    private void discard(final PooledConnection pooled) {
+        closeConnection(pooled.target);
+        release();
+    }
+
+    private synchronized void release() {
+        size--;
+        notifyAll();
+    }
+
+    private void closeConnection(final Connection target) {
+        DatabaseStatementCache.INSTANCE.evict(target);
+        try {
+            target.close();
+        } catch (final SQLException e) {
+            // do nothing
+        }
+    }
+
+    /**
+     * Closes the idle connections, the connections in use are closed when they are returned.
+     */
+    public void close() {
+        LOGGER.debug("{}.close()", this);
+        final List<PooledConnection> closing;
+        synchronized (this) {
+            closed = true;
+            closing = new ArrayList<PooledConnection>(idle);
+            idle.clear();
+            size -= closing.size();
+            notifyAll();
+        }
+        for (final PooledConnection pooled : closing) {
+            closeConnection(pooled.target);
+        }
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger is not supported: " + this);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(dataSource).toString();
+    }
+
+    private static final class PooledConnection {
+
+        private final Connection target;
+        private long lastUsed;
+
+        private PooledConnection(final Connection target) {
+            this.target = target;
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    private static final class Pin {
+
+        private int depth = 0;
+        private PinnedConnectionProxy connection;
+    }
+
+    /**
+     * Controls a connection of the pool, closing it returns the connection to the pool.
+     */
+    private final class PooledConnectionProxy extends DelegatingConnectionProxy {
+
+        private final PooledConnection pooled;
+        private boolean returned = false;
+
+        public PooledConnectionProxy(final PooledConnection pooled) {
+            super(pooled.target);
+            this.pooled = pooled;
+        }
+
+        @Override
+        public boolean isControlConnection() {
+            return true;
+        }
+
+        @Override
+        protected Connection getDelegate() throws SQLException {
+            if (returned) {
+                throw new SQLException("Connection returned to the pool: " + DatabaseConnectionPool.this);
+            }
+            return target;
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return returned || target.isClosed();
+        }
+
+        @Override
+        public void close() {
+            if (!returned) {
+                returned = true;
+                giveBack(pooled);
+            }
+        }
+    }
+
+    /**
+     * Shares the pinned connection of a thread: it is neither closed nor committed by the statements.
+     */
+    private static final class PinnedConnectionProxy extends DelegatingConnectionProxy {
+
+        public PinnedConnectionProxy(final Connection target) {
+            super(target);
+        }
+
+        @Override
+        public boolean isControlConnection() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package pro.zhantss.lucene.store.database.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process wide cache of the prepared statements of the connections used by the
+ * {@link pro.zhantss.lucene.store.database.DatabaseDirectory} instances, so that the hot metadata queries reuse the
+ * statement, and the server side plan, instead of preparing it again on every call.
+ * <p/>
+ * The statements are cached per physical connection (behind the {@link ConnectionProxy} wrappers), at most
+ * {@link #getMaxStatements()} per connection with the least recently used ones closed first, and closed with the
+ * connection by {@link DataSourceUtils#releaseConnection(Connection)}. A statement is checked out while it is used, a
+ * second user of the same sql on the same connection prepares its own.
+ * <p/>
+ * Only the connections known to stay open between two statements use it: the ones of a
+ * {@link pro.zhantss.lucene.store.database.handler.DatabaseTransaction}, the inner connections of a
+ * {@link TransactionAwareDataSourceProxy}, and the pinned and pooled connections of a {@link DatabaseConnectionPool}
+ * (see {@link #isCacheable(Connection)}). The statements of any other connection, such as the ones of a plain or of
+ * an external pooled <code>DataSource</code> closed after every statement, are prepared and closed as usual.
+ *
+ */
+public class DatabaseStatementCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseStatementCache.class);
+
+    /**
+     * The default number of statements cached per connection.
+     */
+    public static final int DEFAULT_MAX_STATEMENTS = 32;
+
+    public static final DatabaseStatementCache INSTANCE = new DatabaseStatementCache();
+
+    private final Map<Connection, Map<String, PreparedStatement>> connections = new IdentityHashMap<Connection, Map<String, PreparedStatement>>();
+    private int maxStatements = DEFAULT_MAX_STATEMENTS;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    private DatabaseStatementCache() {
+    }
+
+    /**
+     * @return
+     */
+    public synchronized int getMaxStatements() {
+        return maxStatements;
+    }
+
+    /**
+     * Changes the number of statements cached per connection, <code>0</code> disables the cache. The cached statements
+     * are closed.
+     *
+     * @param maxStatements
+     */
+    public void setMaxStatements(final int maxStatements) {
+        if (maxStatements < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + maxStatements);
+        }
+        LOGGER.info("{}.setMaxStatements({})", this, maxStatements);
+        final Map<Connection, Map<String, PreparedStatement>> closed;
+        synchronized (this) {
+            this.maxStatements = maxStatements;
+            closed = new IdentityHashMap<Connection, Map<String, PreparedStatement>>(connections);
+            connections.clear();
+        }
+        for (final Map<String, PreparedStatement> statements : closed.values()) {
+            close(statements);
+        }
+    }
+
+    /**
+     * @return
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Checks out the cached statement of the sql on the connection, or prepares a new one.
+     *
+     * @param connection
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    public PreparedStatement prepare(final Connection connection, final String sql) throws SQLException {
+        if (!isCacheable(connection)) {
+            return connection.prepareStatement(sql);
+        }
+        final Connection target = getTargetConnection(connection);
+        synchronized (this) {
+            final Map<String, PreparedStatement> statements = connections.get(target);
+            final PreparedStatement ps = statements != null ? statements.remove(sql) : null;
+            if (ps != null) {
+                hitCount++;
+                return ps;
+            }
+            missCount++;
+        }
+        return target.prepareStatement(sql);
+    }
+
+    /**
+     * Returns a statement checked out with {@link #prepare(Connection, String)} to the cache, or closes it if the
+     * cache is disabled or already holds one for the sql.
+     *
+     * @param connection
+     * @param sql
+     * @param ps
+     */
+    public void release(final Connection connection, final String sql, final PreparedStatement ps) {
+        if (ps == null) {
+            return;
+        }
+        if (!isCacheable(connection)) {
+            DataSourceUtils.closeStatement(ps);
+            return;
+        }
+        PreparedStatement evicted = ps;
+        try {
+            ps.clearParameters();
+            ps.clearBatch();
+            final Connection target = getTargetConnection(connection);
+            synchronized (this) {
+                if (maxStatements > 0) {
+                    Map<String, PreparedStatement> statements = connections.get(target);
+                    if (statements == null) {
+                        statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+                        connections.put(target, statements);
+                    }
+                    if (!statements.containsKey(sql)) {
+                        statements.put(sql, ps);
+                        evicted = null;
+                        if (statements.size() > maxStatements) {
+                            final Iterator<PreparedStatement> it = statements.values().iterator();
+                            evicted = it.next();
+                            it.remove();
+                        }
+                    }
+                }
+            }
+        } catch (final SQLException e) {
+            // not reusable
+        }
+        DataSourceUtils.closeStatement(evicted);
+    }
+
+    /**
+     * Closes the statements cached for a connection, before the connection itself is closed.
+     *
+     * @param connection
+     */
+    public void evict(final Connection connection) {
+        final Map<String, PreparedStatement> statements;
+        synchronized (this) {
+            statements = connections.remove(getTargetConnection(connection));
+        }
+        if (statements != null) {
+            close(statements);
+        }
+    }
+
+    /**
+     * Whether the connection stays open after the statement: a {@link ConnectionProxy} that does not control its
+     * connection, or a connection of a {@link DatabaseConnectionPool}.
+     *
+     * @param connection
+     * @return
+     */
+    public static boolean isCacheable(final Connection connection) {
+        return connection instanceof ConnectionProxy
+                && (!((ConnectionProxy) connection).isControlConnection() || DatabaseConnectionPool.isPooled(connection));
+    }
+
+    private static void close(final Map<String, PreparedStatement> statements) {
+        for (final PreparedStatement ps : statements.values()) {
+            DataSourceUtils.closeStatement(ps);
+        }
+    }
+
+    private static Connection getTargetConnection(final Connection connection) {
+        Connection target = connection;
+        while (target instanceof ConnectionProxy) {
+            target = ((ConnectionProxy) target).getTargetConnection();
+        }
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName();
+    }
+}
@@ -1,15 +1,9 @@
 package pro.zhantss.lucene.store.database.datasource;
 
 import java.io.PrintWriter;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
@@ -59,7 +53,10 @@ public class TransactionAwareDataSourceProxy implements DataSource {
 
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(TransactionAwareDataSourceProxy.class);
 
-    private static ThreadLocal<Map<DataSource, Connection>> connectionHolders = new ThreadLocal<Map<DataSource, Connection>>();
+    /**
+     * The connection of the data source bound to each thread.
+     */
+    private final ThreadLocal<Connection> connectionHolder = new ThreadLocal<Connection>();
 
     private final DataSource dataSource;
 
@@ -102,15 +99,10 @@ public class TransactionAwareDataSourceProxy implements DataSource {
      */
     @Override
     public Connection getConnection(final String username, final String password) throws SQLException {
-        Map<DataSource, Connection> holders = connectionHolders.get();
-        if (holders == null) {
-            holders = new HashMap<DataSource, Connection>();
-            connectionHolders.set(holders);
-        }
-        Connection con = holders.get(getTargetDataSource());
+        Connection con = connectionHolder.get();
         if (con == null) {
             con = getTargetDataSource().getConnection(username, password);
-            holders.put(getTargetDataSource(), con);
+            connectionHolder.set(con);
             return getTransactionAwareConnectionProxy(con, getTargetDataSource(), true);
         }
         return getTransactionAwareConnectionProxy(con, getTargetDataSource(), false);
@@ -130,15 +122,10 @@ public class TransactionAwareDataSourceProxy implements DataSource {
      */
     @Override
     public Connection getConnection() throws SQLException {
-        Map<DataSource, Connection> holders = connectionHolders.get();
-        if (holders == null) {
-            holders = new HashMap<DataSource, Connection>();
-            connectionHolders.set(holders);
-        }
-        Connection con = holders.get(getTargetDataSource());
+        Connection con = connectionHolder.get();
         if (con == null) {
             con = getTargetDataSource().getConnection();
-            holders.put(getTargetDataSource(), con);
+            connectionHolder.set(con);
             return getTransactionAwareConnectionProxy(con, getTargetDataSource(), true);
         }
         return getTransactionAwareConnectionProxy(con, getTargetDataSource(), false);
@@ -154,87 +141,49 @@ public class TransactionAwareDataSourceProxy implements DataSource {
      */
     protected Connection getTransactionAwareConnectionProxy(final Connection target, final DataSource dataSource,
             final boolean controlConnection) {
-        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
-                new Class[] { ConnectionProxy.class }, new TransactionAwareInvocationHandler(target, dataSource,
-                        controlConnection));
+        return new TransactionAwareConnectionProxy(target, controlConnection);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T> T unwrap(final Class<T> iface) throws SQLException {
-        try {
-            final Method method = dataSource.getClass().getMethod("unwarp", Class.class);
-            return (T) method.invoke(dataSource, iface);
-        } catch (final Exception e) {
-            throw new SQLException("Failed to invoke unwrap " + e.getMessage());
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
         }
+        return dataSource.unwrap(iface);
     }
 
     @Override
     public boolean isWrapperFor(final Class<?> iface) throws SQLException {
-        try {
-            final Method method = dataSource.getClass().getMethod("isWrapperFor", Class.class);
-            return (Boolean) method.invoke(dataSource, iface);
-        } catch (final Exception e) {
-            throw new SQLException("Failed to invoke isWrapperFor " + e.getMessage());
-        }
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
     }
 
     /**
-     * Invocation handler that delegates close calls on JDBC Connections to to being aware of thread-bound transactions.
+     * Connection proxy that delegates close calls on JDBC Connections to to being aware of thread-bound transactions.
      */
-    private static class TransactionAwareInvocationHandler implements InvocationHandler {
-
-        private final Connection target;
-
-        private final DataSource dataSource;
+    private class TransactionAwareConnectionProxy extends DelegatingConnectionProxy {
 
         private final boolean controlConnection;
 
-        public TransactionAwareInvocationHandler(final Connection target, final DataSource dataSource,
-                final boolean controlConnection) {
-            this.target = target;
-            this.dataSource = dataSource;
+        public TransactionAwareConnectionProxy(final Connection target, final boolean controlConnection) {
+            super(target);
             this.controlConnection = controlConnection;
         }
 
         @Override
-        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-            // Invocation on ConnectionProxy interface coming in...
-
-            if (method.getName().equals("getTargetConnection")) {
-                // Handle getTargetConnection method: return underlying
-                // Connection.
-                return target;
-            } else if (method.getName().equals("isControlConnection")) {
-                return controlConnection ? Boolean.TRUE : Boolean.FALSE;
-            } else if (method.getName().equals("equals")) {
-                // Only consider equal when proxies are identical.
-                return proxy == args[0] ? Boolean.TRUE : Boolean.FALSE;
-            } else if (method.getName().equals("hashCode")) {
-                // Use hashCode of Connection proxy.
-                return new Integer(hashCode());
-            } else if (method.getName().equals("close")) {
-                if (controlConnection) {
-                    final Map<DataSource, Connection> holders = connectionHolders.get();
-                    if (holders == null || !holders.containsKey(dataSource)) {
-                        throw new IllegalStateException("No value for data source [" + dataSource
-                                + "] bound to thread [" + Thread.currentThread().getName() + "]");
-                    }
-                    final Connection transConnection = holders.remove(dataSource);
-                    if (holders.isEmpty()) {
-                        connectionHolders.set(null);
-                    }
-                    transConnection.close();
-                }
-                return null;
-            }
+        public boolean isControlConnection() {
+            return controlConnection;
+        }
 
-            // Invoke method on target Connection.
-            try {
-                return method.invoke(target, args);
-            } catch (final InvocationTargetException ex) {
-                throw ex.getTargetException();
+        @Override
+        public void close() throws SQLException {
+            if (controlConnection) {
+                final Connection transConnection = connectionHolder.get();
+                if (transConnection == null) {
+                    throw new IllegalStateException("No value for data source [" + dataSource
+                            + "] bound to thread [" + Thread.currentThread().getName() + "]");
+                }
+                connectionHolder.remove();
+                transConnection.close();
             }
         }
     }
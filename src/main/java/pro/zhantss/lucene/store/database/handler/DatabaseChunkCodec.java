@@ -0,0 +1,154 @@
+package pro.zhantss.lucene.store.database.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.codecs.compressing.CompressionMode;
+import org.apache.lucene.codecs.compressing.Compressor;
+import org.apache.lucene.codecs.compressing.Decompressor;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.BytesRef;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.config.ChunkCompression;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+
+/**
+ * Encodes the chunk rows of the {@link pro.zhantss.lucene.store.database.config.StorageLayout#CHUNKED} layout, see
+ * {@link DatabaseConfig#setChunkCompression(String, ChunkCompression)}.
+ * <p/>
+ * Every chunk starts with a header byte: a stored chunk follows it, a compressed one is preceded by its uncompressed
+ * length (VInt). A chunk that does not shrink is stored. The format is the one of the table, not of the configuration:
+ * the chunk tables created since the compression exists record it in a {@link #FORMAT_ROW} row, the chunks of an
+ * older table are stored as they are, without header, and are never compressed.
+ *
+ */
+final class DatabaseChunkCodec {
+
+    private static final byte STORED = 0;
+    private static final byte LZ4 = 1;
+    private static final byte DEFLATE = 2;
+
+    /**
+     * The name and the chunk of the row of a chunk table of which the chunks start with a header byte.
+     */
+    static final String FORMAT_ROW = ".format";
+    static final int FORMAT_CHUNK = -1;
+
+    /**
+     * The compressors and decompressors of the thread, created once: the deflate ones hold a native zlib stream, only
+     * released by their finalizer.
+     */
+    private static final ThreadLocal<Codecs> codecs = new ThreadLocal<Codecs>() {
+
+        @Override
+        protected Codecs initialValue() {
+            return new Codecs();
+        }
+    };
+
+    private static final class Codecs {
+
+        private Compressor lz4Compressor;
+        private Compressor deflateCompressor;
+        private Decompressor lz4Decompressor;
+        private Decompressor deflateDecompressor;
+
+        private Compressor compressor(final byte header) {
+            if (header == LZ4) {
+                if (lz4Compressor == null) {
+                    lz4Compressor = CompressionMode.FAST.newCompressor();
+                }
+                return lz4Compressor;
+            }
+            if (deflateCompressor == null) {
+                deflateCompressor = CompressionMode.HIGH_COMPRESSION.newCompressor();
+            }
+            return deflateCompressor;
+        }
+
+        private Decompressor decompressor(final byte header) {
+            if (header == LZ4) {
+                if (lz4Decompressor == null) {
+                    lz4Decompressor = CompressionMode.FAST.newDecompressor();
+                }
+                return lz4Decompressor;
+            }
+            if (deflateDecompressor == null) {
+                deflateDecompressor = CompressionMode.HIGH_COMPRESSION.newDecompressor();
+            }
+            return deflateDecompressor;
+        }
+    }
+
+    private DatabaseChunkCodec() {
+    }
+
+    /**
+     * @return the chunk row of <code>length</code> bytes of <code>b</code>, <code>b</code> itself if it can be stored
+     *         as it is
+     */
+    static byte[] encode(final DatabaseDirectory directory, final String name, final byte[] b, final int offset,
+            final int length) throws DatabaseDirectoryException {
+        if (!directory.hasChunkHeaders()) {
+            return offset == 0 && length == b.length ? b : Arrays.copyOfRange(b, offset, offset + length);
+        }
+        final ChunkCompression compression = directory.getConfig().getChunkCompression(name);
+        if (compression != ChunkCompression.NONE) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 16);
+            final OutputStreamDataOutput out = new OutputStreamDataOutput(bytes);
+            try {
+                final byte header = compression == ChunkCompression.LZ4 ? LZ4 : DEFLATE;
+                out.writeByte(header);
+                out.writeVInt(length);
+                codecs.get().compressor(header).compress(b, offset, length, out);
+            } catch (final IOException e) {
+                throw new DatabaseDirectoryException("Failed to compress a chunk of [" + name + "]", e);
+            }
+            if (bytes.size() < length + 1) {
+                return bytes.toByteArray();
+            }
+        }
+        final byte[] stored = new byte[length + 1];
+        stored[0] = STORED;
+        System.arraycopy(b, offset, stored, 1, length);
+        return stored;
+    }
+
+    /**
+     * @return the content of the chunk row, <code>null</code> if <code>row</code> is
+     */
+    static byte[] decode(final DatabaseDirectory directory, final String name, final byte[] row)
+            throws DatabaseDirectoryException {
+        if (!directory.hasChunkHeaders() || row == null) {
+            return row;
+        }
+        if (row.length == 0) {
+            throw new DatabaseDirectoryException("Empty chunk row of [" + name + "]");
+        }
+        switch (row[0]) {
+        case STORED:
+            return Arrays.copyOfRange(row, 1, row.length);
+        case LZ4:
+        case DEFLATE:
+            break;
+        default:
+            throw new DatabaseDirectoryException("Unknown chunk header " + row[0] + " of [" + name + "]");
+        }
+        try {
+            final ByteArrayDataInput in = new ByteArrayDataInput(row, 1, row.length - 1);
+            final int length = in.readVInt();
+            final BytesRef bytes = new BytesRef();
+            codecs.get().decompressor(row[0]).decompress(in, length, 0, length, bytes);
+            if (bytes.offset == 0 && bytes.bytes.length == length) {
+                return bytes.bytes;
+            }
+            return Arrays.copyOfRange(bytes.bytes, bytes.offset, bytes.offset + bytes.length);
+        } catch (final IOException e) {
+            throw new DatabaseDirectoryException("Failed to decompress a chunk of [" + name + "]", e);
+        }
+    }
+}
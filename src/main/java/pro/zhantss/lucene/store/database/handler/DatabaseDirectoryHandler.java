@@ -3,33 +3,115 @@ package pro.zhantss.lucene.store.database.handler;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexWriter;
 
 import pro.zhantss.lucene.data.handler.DataHandler;
 import pro.zhantss.lucene.store.database.DatabaseDirectory;
 import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.cache.DatabaseBlockCache;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
 import pro.zhantss.lucene.store.database.datasource.DataSourceUtils;
 
 public class DatabaseDirectoryHandler {
 
     public static final DatabaseDirectoryHandler INSTANCE = new DatabaseDirectoryHandler();
 
+    private static final DatabaseBlockCache cache = DatabaseBlockCache.INSTANCE;
+
+    private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     private DatabaseDirectoryHandler() {
     }
 
+    /**
+     * The connection for the queries over the whole table, the one of the transaction while it has pending files.
+     */
+    private Connection getConnection(final DatabaseDirectory directory) throws DatabaseDirectoryException {
+        final DatabaseTransaction transaction = directory.getTransaction();
+        if (transaction != null && transaction.isOpen()) {
+            return transaction.getConnection();
+        }
+        return DataSourceUtils.getConnection(directory.getDataSource());
+    }
+
+    /**
+     * The connection to read a file, the one of the transaction if the file was written or deleted in it.
+     */
+    private Connection getConnection(final DatabaseDirectory directory, final String name)
+            throws DatabaseDirectoryException {
+        final DatabaseTransaction transaction = directory.getTransaction();
+        if (transaction != null && transaction.contains(name)) {
+            return transaction.getConnection();
+        }
+        return DataSourceUtils.getConnection(directory.getDataSource());
+    }
+
+    /**
+     * The connection to write a file, see {@link DatabaseConfig#isTransactionalCommit()}.
+     */
+    private Connection getWriteConnection(final DatabaseDirectory directory, final String name)
+            throws DatabaseDirectoryException {
+        final DatabaseTransaction transaction = directory.getTransaction();
+        if (transaction != null && DatabaseTransaction.isTransactional(name)) {
+            return transaction.getConnection(name);
+        }
+        return DataSourceUtils.getConnection(directory.getDataSource());
+    }
+
+    private DatabaseDirectoryException rollback(final DatabaseDirectory directory, final String name,
+            final DatabaseDirectoryException e) {
+        final DatabaseTransaction transaction = directory.getTransaction();
+        if (transaction != null && DatabaseTransaction.isTransactional(name)) {
+            transaction.rollback(e);
+        }
+        return e;
+    }
+
     /**
      * @param directory
      * @return
      * @throws DatabaseDirectoryException
      */
     public boolean existsIndexTable(final DatabaseDirectory directory) throws DatabaseDirectoryException {
+        final DatabaseConfig config = directory.getConfig();
+        final String tableName = directory.getIndexTableName();
+        boolean exists = existsTable(directory, config.sqlTableExists(tableName));
+        if (exists && config.isChunked()) {
+            exists = existsTable(directory, config.sqlChunkTableExists(tableName));
+        }
+        if (exists && config.isDeduplicated()) {
+            exists = existsTable(directory, config.sqlContentTableExists());
+        }
+        if (exists && config.isSplit()) {
+            exists = existsTable(directory, config.sqlSplitContentTableExists(tableName));
+        }
+        return exists;
+    }
+
+    private boolean existsTable(final DatabaseDirectory directory, final String sqlTableExists)
+            throws DatabaseDirectoryException {
         final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlTableExists = directory.getConfig().sqlTableExists(directory.getIndexTableName());
         boolean exists = false;
         try {
             exists = (Boolean) JdbcTemplate.executeSelect(connection, sqlTableExists,
@@ -55,8 +137,69 @@ public class DatabaseDirectoryHandler {
      * @throws DatabaseDirectoryException
      */
     public void createIndexTable(final DatabaseDirectory directory) throws DatabaseDirectoryException {
+        final DatabaseConfig config = directory.getConfig();
+        final String tableName = directory.getIndexTableName();
+        if (!existsTable(directory, config.sqlTableExists(tableName))) {
+            createTable(directory, config.sqlTableCreate(tableName));
+        }
+        if (config.isChunked() && !existsTable(directory, config.sqlChunkTableExists(tableName))) {
+            createTable(directory, config.sqlChunkTableCreate(tableName));
+            saveChunkFormat(directory);
+        }
+        if (config.isDeduplicated() && !existsTable(directory, config.sqlContentTableExists())) {
+            createTable(directory, config.sqlContentTableCreate());
+        }
+        if (config.isSplit() && !existsTable(directory, config.sqlSplitContentTableExists(tableName))) {
+            createTable(directory, config.sqlSplitContentTableCreate(tableName));
+        }
+    }
+
+    /**
+     * Records that the chunks of the new chunk table start with a header byte, see {@link DatabaseChunkCodec}.
+     */
+    private void saveChunkFormat(final DatabaseDirectory directory) throws DatabaseDirectoryException {
+        final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
+        final String sqlChunkInsert = directory.getSql().sqlChunkInsert();
+        JdbcTemplate.executeUpdate(connection, sqlChunkInsert, new JdbcTemplate.PrepateStatementAwareCallback() {
+
+            @Override
+            public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                ps.setString(1, DatabaseChunkCodec.FORMAT_ROW);
+                ps.setInt(2, DatabaseChunkCodec.FORMAT_CHUNK);
+                ps.setBytes(3, new byte[] { 1 });
+            }
+        });
+    }
+
+    /**
+     * @param directory
+     * @return <code>true</code> if the chunks of the chunk table start with a header byte, <code>false</code> for a
+     *         table created before the chunk compression
+     * @throws DatabaseDirectoryException
+     */
+    public boolean hasChunkHeaders(final DatabaseDirectory directory) throws DatabaseDirectoryException {
+        final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
+        final String sqlChunkSelectRange = directory.getSql().sqlChunkSelectRange();
+        return (Boolean) JdbcTemplate.executeSelect(connection, sqlChunkSelectRange,
+                new JdbcTemplate.ExecuteSelectCallback() {
+
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                        ps.setString(1, DatabaseChunkCodec.FORMAT_ROW);
+                        ps.setInt(2, DatabaseChunkCodec.FORMAT_CHUNK);
+                        ps.setInt(3, DatabaseChunkCodec.FORMAT_CHUNK);
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        return rs.next() ? Boolean.TRUE : Boolean.FALSE;
+                    }
+                });
+    }
+
+    private void createTable(final DatabaseDirectory directory, final String sqlCreate)
+            throws DatabaseDirectoryException {
         final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlCreate = directory.getConfig().sqlTableCreate(directory.getIndexTableName());
         JdbcTemplate.executeUpdate(connection, sqlCreate, new JdbcTemplate.PrepateStatementAwareCallback() {
 
             @Override
@@ -72,8 +215,8 @@ public class DatabaseDirectoryHandler {
      * @throws DatabaseDirectoryException
      */
     public String[] listAllFiles(final DatabaseDirectory directory) throws DatabaseDirectoryException {
-        final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlListAll = directory.getConfig().sqlSelectAll(directory.getIndexTableName());
+        final Connection connection = getConnection(directory);
+        final String sqlListAll = directory.getSql().sqlSelectAll();
         return (String[]) JdbcTemplate.executeSelect(connection, sqlListAll, new JdbcTemplate.ExecuteSelectCallback() {
 
             @Override
@@ -91,13 +234,66 @@ public class DatabaseDirectoryHandler {
         });
     }
 
+    /**
+     * @param directory
+     * @return the length of every file, by name
+     * @throws DatabaseDirectoryException
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Long> fileLengths(final DatabaseDirectory directory) throws DatabaseDirectoryException {
+        final Connection connection = getConnection(directory);
+        final String sqlSelectSizes = directory.getSql().sqlSelectSizes();
+        return (Map<String, Long>) JdbcTemplate.executeSelect(connection, sqlSelectSizes,
+                new JdbcTemplate.ExecuteSelectCallback() {
+
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        final Map<String, Long> lengths = new HashMap<String, Long>();
+                        while (rs.next()) {
+                            lengths.put(rs.getString(1), rs.getLong(2));
+                        }
+                        return lengths;
+                    }
+                });
+    }
+
+    /**
+     * @param directory
+     * @return a value that changes whenever a file is added to or deleted from the table, the number of files, the
+     *         last change and the total size separated by <code>/</code>
+     * @throws DatabaseDirectoryException
+     */
+    public String tableGeneration(final DatabaseDirectory directory) throws DatabaseDirectoryException {
+        final Connection connection = getConnection(directory);
+        final String sqlSelectGeneration = directory.getSql().sqlSelectGeneration();
+        return (String) JdbcTemplate.executeSelect(connection, sqlSelectGeneration,
+                new JdbcTemplate.ExecuteSelectCallback() {
+
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        if (!rs.next()) {
+                            return "";
+                        }
+                        return rs.getLong(1) + "/" + rs.getString(2) + "/" + rs.getLong(3);
+                    }
+                });
+    }
+
     /**
      * @param directory
      * @param names
      */
     public void syncFiles(final DatabaseDirectory directory, final Collection<String> names) {
-        // TODO Does nothing, will use transaction to commit the data
-    	// 事务commit
+        // Does nothing, the statements are committed one by one, or with the transaction of the next segments_N
+        // (see DatabaseConfig#isTransactionalCommit())
     }
 
     /**
@@ -107,8 +303,8 @@ public class DatabaseDirectoryHandler {
      * @throws DatabaseDirectoryException
      */
     public long fileLength(final DatabaseDirectory directory, final String name) throws DatabaseDirectoryException {
-        final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlSelectSize = directory.getConfig().sqlSelectSize(directory.getIndexTableName());
+        final Connection connection = getConnection(directory, name);
+        final String sqlSelectSize = directory.getSql().sqlSelectSize();
         return (Long) JdbcTemplate.executeSelect(connection, sqlSelectSize, new JdbcTemplate.ExecuteSelectCallback() {
 
             @Override
@@ -131,30 +327,133 @@ public class DatabaseDirectoryHandler {
      */
     public void renameFile(final DatabaseDirectory directory, final String source, final String dest)
             throws DatabaseDirectoryException {
-        final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlUpdate = directory.getConfig().sqlUpdate(directory.getIndexTableName());
-        JdbcTemplate.executeUpdate(connection, sqlUpdate, new JdbcTemplate.PrepateStatementAwareCallback() {
+        cache.invalidate(directory, source);
+        cache.invalidate(directory, dest);
+        final DatabaseTransaction transaction = directory.getTransaction();
+        if (transaction != null && DatabaseTransaction.isTransactional(source)) {
+            transaction.getConnection(source);
+        }
+        try {
+            final Connection connection = getWriteConnection(directory, dest);
+            final String sqlUpdate = directory.getSql().sqlUpdate();
+            JdbcTemplate.executeUpdate(connection, sqlUpdate, new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                @Override
+                public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                    ps.setFetchSize(1);
+                    ps.setString(1, dest);
+                    ps.setString(2, source);
+                }
+            });
+            if (directory.getConfig().isChunked()) {
+                final Connection chunkConnection = getWriteConnection(directory, dest);
+                final String sqlChunkUpdate = directory.getSql().sqlChunkUpdate();
+                JdbcTemplate.executeUpdate(chunkConnection, sqlChunkUpdate,
+                        new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                            @Override
+                            public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                                ps.setString(1, dest);
+                                ps.setString(2, source);
+                            }
+                        });
+            }
+            if (directory.getConfig().isSplit()) {
+                final Connection contentConnection = getWriteConnection(directory, dest);
+                final String sqlSplitContentUpdate = directory.getSql().sqlSplitContentUpdate();
+                JdbcTemplate.executeUpdate(contentConnection, sqlSplitContentUpdate,
+                        new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                            @Override
+                            public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                                ps.setString(1, dest);
+                                ps.setString(2, source);
+                            }
+                        });
+            }
+        } catch (final DatabaseDirectoryException e) {
+            throw rollback(directory, dest, e);
+        }
+        directory.getCatalog().rename(source, dest);
+    }
+
+    /**
+     * The metadata-only lookup of the lazy inputs: the length of the file, or <code>-1</code> if it does not exist.
+     *
+     * @param directory
+     * @param name
+     * @return
+     * @throws DatabaseDirectoryException
+     */
+    public long fileLengthIfExists(final DatabaseDirectory directory, final String name)
+            throws DatabaseDirectoryException {
+        final Connection connection = getConnection(directory, name);
+        final String sqlSelectSize = directory.getSql().sqlSelectSize();
+        return (Long) JdbcTemplate.executeSelect(connection, sqlSelectSize, new JdbcTemplate.ExecuteSelectCallback() {
 
             @Override
             public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
-                ps.setFetchSize(1);
-                ps.setString(1, dest);
-                ps.setString(2, source);
+                ps.setString(1, name);
+            }
+
+            @Override
+            public Object execute(final ResultSet rs) throws Exception {
+                return rs.next() ? rs.getLong(1) : -1l;
             }
         });
+    }
+
+    /**
+     * The version of a file: its size and the time its row was written, plus its checksum with the
+     * {@link pro.zhantss.lucene.store.database.config.StorageLayout#SPLIT} layout. Changes whenever the file is
+     * written again, even with the same length.
+     *
+     * @param directory
+     * @param name
+     * @return <code>null</code> if the file does not exist
+     * @throws DatabaseDirectoryException
+     */
+    public String fileVersion(final DatabaseDirectory directory, final String name)
+            throws DatabaseDirectoryException {
+        final Connection connection = getConnection(directory, name);
+        final String sqlSelectVersion = directory.getSql().sqlSelectVersion();
+        return (String) JdbcTemplate.executeSelect(connection, sqlSelectVersion,
+                new JdbcTemplate.ExecuteSelectCallback() {
 
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                        ps.setString(1, name);
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        if (!rs.next()) {
+                            return null;
+                        }
+                        final StringBuilder version = new StringBuilder().append(rs.getLong(1));
+                        final Timestamp updated = rs.getTimestamp(2);
+                        version.append('/').append(updated == null ? "" : updated.getTime() + "." + updated.getNanos());
+                        if (rs.getMetaData().getColumnCount() > 2) {
+                            final long checksum = rs.getLong(3);
+                            version.append('/').append(rs.wasNull() ? "" : String.valueOf(checksum));
+                        }
+                        return version.toString();
+                    }
+                });
     }
 
     /**
+     * Reads the size and the content of a file in a single query.
+     *
      * @param directory
      * @param name
-     * @return
+     * @return the content, empty for an empty file, <code>null</code> if the file does not exist
      * @throws DatabaseDirectoryException
      */
     public byte[] fileContent(final DatabaseDirectory directory, final String name) throws DatabaseDirectoryException {
-        final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlSelectContent = directory.getConfig().sqlSelectContent(directory.getIndexTableName());
-        return (byte[]) JdbcTemplate.executeSelect(connection, sqlSelectContent,
+        final Connection connection = getConnection(directory, name);
+        final String sqlSelectFile = directory.getSql().sqlSelectFile();
+        return (byte[]) JdbcTemplate.executeSelect(connection, sqlSelectFile,
                 new JdbcTemplate.ExecuteSelectCallback() {
 
                     @Override
@@ -164,7 +463,233 @@ public class DatabaseDirectoryHandler {
 
                     @Override
                     public Object execute(final ResultSet rs) throws Exception {
-                        return rs.next() ? rs.getBytes(1) : null;
+                        if (!rs.next()) {
+                            return null;
+                        }
+                        final long size = rs.getLong(1);
+                        final byte[] content = rs.getBytes(2);
+                        final int length = content != null ? content.length : 0;
+                        if (length != size) {
+                            throw new DatabaseDirectoryException("Content of [" + name + "] has " + length
+                                    + " bytes instead of " + size);
+                        }
+                        return content != null ? content : new byte[0];
+                    }
+                });
+    }
+
+    /**
+     * Reads the content of several files in a single query. The sizes are read first, and only the content of the
+     * files that fit in the remaining budget is selected, in the order of the names: a driver buffering the whole
+     * result never receives more than the budget.
+     *
+     * @param directory
+     * @param names
+     * @param maxBytes
+     * @return the content of the files read, by name
+     * @throws DatabaseDirectoryException
+     */
+    public Map<String, byte[]> fileContents(final DatabaseDirectory directory, final List<String> names,
+            final long maxBytes) throws DatabaseDirectoryException {
+        final Map<String, Long> sizes = fileLengths(directory, names);
+        final List<String> selected = new ArrayList<String>(names.size());
+        long remaining = maxBytes;
+        for (final String name : names) {
+            final Long size = sizes.get(name);
+            if (size != null && size <= remaining) {
+                selected.add(name);
+                remaining -= size;
+            }
+        }
+        if (selected.isEmpty()) {
+            return new HashMap<String, byte[]>();
+        }
+        final Connection connection = getConnection(directory);
+        final String sqlSelectFiles = directory.getSql().sqlSelectFiles(selected.size());
+        @SuppressWarnings("unchecked")
+        final Map<String, byte[]> contents = (Map<String, byte[]>) JdbcTemplate.executeSelect(connection,
+                sqlSelectFiles, new JdbcTemplate.ExecuteSelectCallback() {
+
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                        for (int i = 0; i < selected.size(); i++) {
+                            ps.setString(i + 1, selected.get(i));
+                        }
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        final Map<String, byte[]> contents = new HashMap<String, byte[]>();
+                        while (rs.next()) {
+                            final long size = rs.getLong(2);
+                            final byte[] content = rs.getBytes(3);
+                            final byte[] bytes = content != null ? content : new byte[0];
+                            // rewritten since its size was read
+                            if (bytes.length == size) {
+                                contents.put(rs.getString(1), bytes);
+                            }
+                        }
+                        return contents;
+                    }
+                });
+        return contents;
+    }
+
+    /**
+     * @param directory
+     * @param names
+     * @return the length of the given files that exist, by name
+     * @throws DatabaseDirectoryException
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Long> fileLengths(final DatabaseDirectory directory, final List<String> names)
+            throws DatabaseDirectoryException {
+        final Connection connection = getConnection(directory);
+        final String sqlSelectFileSizes = directory.getSql().sqlSelectFileSizes(names.size());
+        return (Map<String, Long>) JdbcTemplate.executeSelect(connection, sqlSelectFileSizes,
+                new JdbcTemplate.ExecuteSelectCallback() {
+
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                        for (int i = 0; i < names.size(); i++) {
+                            ps.setString(i + 1, names.get(i));
+                        }
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        final Map<String, Long> lengths = new HashMap<String, Long>();
+                        while (rs.next()) {
+                            lengths.put(rs.getString(1), rs.getLong(2));
+                        }
+                        return lengths;
+                    }
+                });
+    }
+
+    /**
+     * Reads <code>length</code> bytes of the content starting at <code>pos</code>, transferring only that range: the
+     * covering chunks with the chunked layout, with {@link DatabaseConfig#sqlSelectRange(String)} when the database
+     * supports it, through the <code>java.sql.Blob</code> locator otherwise.
+     *
+     * @param directory
+     * @param name
+     * @param pos
+     * @param b
+     * @param offset
+     * @param length
+     * @return the number of bytes read, less than <code>length</code> if the content ends before
+     * @throws DatabaseDirectoryException
+     */
+    public int fileRange(final DatabaseDirectory directory, final String name, final long pos, final byte[] b,
+            final int offset, final int length) throws DatabaseDirectoryException {
+        final DatabaseConfig config = directory.getConfig();
+        if (config.isChunked()) {
+            return chunkRange(directory, name, pos, b, offset, length);
+        }
+        final Connection connection = getConnection(directory, name);
+        final String sqlSelectRange = directory.getSql().sqlSelectRange();
+        if (sqlSelectRange != null) {
+            return (Integer) JdbcTemplate.executeSelect(connection, sqlSelectRange,
+                    new JdbcTemplate.ExecuteSelectCallback() {
+
+                        @Override
+                        public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                            ps.setLong(1, pos + 1);
+                            ps.setInt(2, length);
+                            ps.setString(3, name);
+                        }
+
+                        @Override
+                        public Object execute(final ResultSet rs) throws Exception {
+                            return copyRange(rs.next() ? rs.getBytes(1) : null, b, offset, length);
+                        }
+                    });
+        }
+        final String sqlSelectContent = directory.getSql().sqlSelectContent();
+        return (Integer) JdbcTemplate.executeSelect(connection, sqlSelectContent,
+                new JdbcTemplate.ExecuteSelectCallback() {
+
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                        ps.setString(1, name);
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        final Blob blob = rs.next() ? rs.getBlob(1) : null;
+                        if (blob == null) {
+                            return 0;
+                        }
+                        try {
+                            return copyRange(blob.getBytes(pos + 1, length), b, offset, length);
+                        } finally {
+                            blob.free();
+                        }
+                    }
+                });
+    }
+
+    private int chunkRange(final DatabaseDirectory directory, final String name, final long pos, final byte[] b,
+            final int offset, final int length) throws DatabaseDirectoryException {
+        final int chunkSize = directory.getConfig().getChunkSize();
+        final int firstChunk = (int) (pos / chunkSize);
+        final byte[][] chunks = fileChunks(directory, name, firstChunk, (int) ((pos + length - 1) / chunkSize));
+        int done = 0;
+        for (int i = 0; i < chunks.length && done < length; i++) {
+            final int inChunk = (int) (pos + done - (long) (firstChunk + i) * chunkSize);
+            final int toCopy = chunks[i] == null ? 0 : Math.min(length - done, chunks[i].length - inChunk);
+            if (toCopy <= 0) {
+                break;
+            }
+            System.arraycopy(chunks[i], inChunk, b, offset + done, toCopy);
+            done += toCopy;
+        }
+        return done;
+    }
+
+    private static int copyRange(final byte[] range, final byte[] b, final int offset, final int length) {
+        if (range == null) {
+            return 0;
+        }
+        final int read = Math.min(range.length, length);
+        System.arraycopy(range, 0, b, offset, read);
+        return read;
+    }
+
+    /**
+     * Fetches the chunk rows <code>from</code> to <code>to</code> (both inclusive) of a file stored with the
+     * {@link pro.zhantss.lucene.store.database.config.StorageLayout#CHUNKED} layout, in one query.
+     *
+     * @param directory
+     * @param name
+     * @param from
+     * @param to
+     * @return the chunks, indexed by <code>chunk - from</code>, <code>null</code> for the missing ones
+     * @throws DatabaseDirectoryException
+     */
+    public byte[][] fileChunks(final DatabaseDirectory directory, final String name, final int from, final int to)
+            throws DatabaseDirectoryException {
+        final Connection connection = getConnection(directory, name);
+        final String sqlChunkSelectRange = directory.getSql().sqlChunkSelectRange();
+        return (byte[][]) JdbcTemplate.executeSelect(connection, sqlChunkSelectRange,
+                new JdbcTemplate.ExecuteSelectCallback() {
+
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                        ps.setString(1, name);
+                        ps.setInt(2, from);
+                        ps.setInt(3, to);
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        final byte[][] chunks = new byte[to - from + 1][];
+                        while (rs.next()) {
+                            chunks[rs.getInt(1) - from] = DatabaseChunkCodec.decode(directory, name,
+                                    rs.getBytes(2));
+                        }
+                        return chunks;
                     }
                 });
     }
@@ -177,8 +702,8 @@ public class DatabaseDirectoryHandler {
      */
     public InputStream fileStream(final DatabaseDirectory directory, final String name)
             throws DatabaseDirectoryException {
-        final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlSelectContent = directory.getConfig().sqlSelectContent(directory.getIndexTableName());
+        final Connection connection = getConnection(directory, name);
+        final String sqlSelectContent = directory.getSql().sqlSelectContent();
         byte[] buffer;
 		try {
 			buffer = DataHandler.streamToByteListAndClose((InputStream) JdbcTemplate.executeSelect(connection, sqlSelectContent,
@@ -224,25 +749,482 @@ public class DatabaseDirectoryHandler {
      */
     public void saveFile(final DatabaseDirectory directory, final String name, final Object content, final long length)
             throws DatabaseDirectoryException {
-        final String sqlInsert = directory.getConfig().sqlInsert(directory.getIndexTableName());
+        saveFile(directory, name, content, length, -1, null);
+    }
+
+    /**
+     * Saves a file of which the checksum and the content hash were computed while writing it. With the
+     * {@link pro.zhantss.lucene.store.database.config.StorageLayout#DEDUPLICATED} layout the hash is required for
+     * a content given as a stream, a content given as bytes is hashed here (see
+     * {@link #newContentDigest(DatabaseDirectory)}). The checksum is only stored by the
+     * {@link pro.zhantss.lucene.store.database.config.StorageLayout#SPLIT} layout.
+     *
+     * @param directory
+     * @param name
+     * @param content
+     * @param length
+     * @param checksum
+     *            the CRC32 of the content, or <code>-1</code>
+     * @param hash
+     *            the hexadecimal content hash, or <code>null</code>
+     * @throws DatabaseDirectoryException
+     */
+    public void saveFile(final DatabaseDirectory directory, final String name, final Object content,
+            final long length, final long checksum, final String hash) throws DatabaseDirectoryException {
+        cache.invalidate(directory, name);
+        final boolean chunked = directory.getConfig().isChunked();
+        final boolean split = directory.getConfig().isSplit();
+        final boolean deduplicated = directory.getConfig().isDeduplicated();
+        final String contentHash = deduplicated && length > 0 ? contentHash(directory, name, content, hash) : null;
+        final DatabaseTransaction transaction = directory.getTransaction();
+        final boolean transactional = transaction != null && DatabaseTransaction.isTransactional(name);
+        if (contentHash != null) {
+            // the content first, the index row makes the file visible
+            try {
+                saveContent(directory, contentHash, content, length);
+            } catch (final DatabaseDirectoryException e) {
+                closeContent(content);
+                throw rollback(directory, name, e);
+            }
+            if (transactional) {
+                transaction.acquired(contentHash);
+            }
+        }
+        if (chunked && length > 0 && content != null) {
+            // chunks first, the metadata row makes the file visible
+            try {
+                saveChunks(directory, name, content);
+            } catch (final DatabaseDirectoryException e) {
+                throw rollback(directory, name, e);
+            }
+        }
+        if (split && length > 0 && content != null) {
+            // the content row first, the metadata row makes the file visible
+            try {
+                saveSplitContent(directory, name, content, length);
+            } catch (final DatabaseDirectoryException e) {
+                closeContent(content);
+                throw rollback(directory, name, e);
+            }
+        }
+        final String sqlInsert = directory.getSql().sqlInsert();
+        final Blob[] locator = new Blob[1];
+        try {
+            final long generation = split ? nextGeneration(directory, name) : 0;
+            final Connection connection = getWriteConnection(directory, name);
+            JdbcTemplate.executeUpdate(connection, sqlInsert, new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                @Override
+                public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                    ps.setFetchSize(1);
+                    ps.setString(1, name);
+                    if (split) {
+                        ps.setLong(2, length);
+                        if (checksum < 0) {
+                            ps.setNull(3, Types.BIGINT);
+                        } else {
+                            ps.setLong(3, checksum);
+                        }
+                        ps.setLong(4, generation);
+                        return;
+                    }
+                    if (deduplicated) {
+                        if (contentHash == null) {
+                            ps.setNull(2, Types.VARCHAR);
+                        } else {
+                            ps.setString(2, contentHash);
+                        }
+                    } else if (length == 0 || chunked) {
+                        ps.setNull(2, Types.BLOB);
+                    } else if (content instanceof InputStream) {
+                        locator[0] = setContent(directory, ps, 2, (InputStream) content, length);
+                    } else {
+                        ps.setBytes(2, (byte[]) content);
+                    }
+                    ps.setLong(3, length);
+                }
+            });
+        } catch (final DatabaseDirectoryException e) {
+            if (contentHash != null && !transactional) {
+                try {
+                    releaseContent(directory, contentHash);
+                } catch (final DatabaseDirectoryException ignored) {
+                    // the content stays stored, only once more than needed
+                }
+            }
+            throw rollback(directory, name, e);
+        } finally {
+            if (locator[0] != null) {
+                try {
+                    locator[0].free();
+                } catch (final SQLException e) {
+                    // the driver releases it with the connection
+                }
+            }
+            closeContent(content);
+        }
+        directory.getCatalog().put(name, length);
+        if (transaction != null && DatabaseTransaction.isCommitPoint(name)) {
+            transaction.commit();
+        }
+    }
+
+    /**
+     * Inserts the content row of a file of the {@link pro.zhantss.lucene.store.database.config.StorageLayout#SPLIT}
+     * layout.
+     */
+    private void saveSplitContent(final DatabaseDirectory directory, final String name, final Object content,
+            final long length) throws DatabaseDirectoryException {
+        final String sqlSplitContentInsert = directory.getSql().sqlSplitContentInsert();
+        final Blob[] locator = new Blob[1];
+        try {
+            final Connection connection = getWriteConnection(directory, name);
+            JdbcTemplate.executeUpdate(connection, sqlSplitContentInsert,
+                    new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                        @Override
+                        public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                            ps.setString(1, name);
+                            if (content instanceof InputStream) {
+                                locator[0] = setContent(directory, ps, 2, (InputStream) content, length);
+                            } else {
+                                ps.setBytes(2, (byte[]) content);
+                            }
+                        }
+                    });
+        } finally {
+            if (locator[0] != null) {
+                try {
+                    locator[0].free();
+                } catch (final SQLException e) {
+                    // the driver releases it with the connection
+                }
+            }
+        }
+    }
+
+    /**
+     * The generation of a file of the {@link pro.zhantss.lucene.store.database.config.StorageLayout#SPLIT} layout,
+     * taken from the counter of the directory. Files are only saved by the holder of the write lock: the counter is
+     * read from the table when the write lock is saved, or on first use, and never again while the lock is held.
+     */
+    private long nextGeneration(final DatabaseDirectory directory, final String name)
+            throws DatabaseDirectoryException {
+        final AtomicLong lastGeneration = directory.getLastGeneration();
+        if (IndexWriter.WRITE_LOCK_NAME.equals(name)) {
+            // another directory may have saved files since
+            lastGeneration.set(lastGeneration(directory, getWriteConnection(directory, name)));
+        } else if (lastGeneration.get() < 0) {
+            lastGeneration.compareAndSet(-1, lastGeneration(directory, getWriteConnection(directory, name)));
+        }
+        return lastGeneration.incrementAndGet();
+    }
+
+    /**
+     * The highest generation of the metadata table.
+     */
+    private long lastGeneration(final DatabaseDirectory directory, final Connection connection)
+            throws DatabaseDirectoryException {
+        final String sqlSelectLastGeneration = directory.getSql().sqlSelectLastGeneration();
+        return (Long) JdbcTemplate.executeSelect(connection, sqlSelectLastGeneration,
+                new JdbcTemplate.ExecuteSelectCallback() {
+
+                    @Override
+                    public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                    }
+
+                    @Override
+                    public Object execute(final ResultSet rs) throws Exception {
+                        return rs.next() ? rs.getLong(1) : 0L;
+                    }
+                });
+    }
+
+    private static void closeContent(final Object content) {
+        if (content instanceof InputStream) {
+            try {
+                ((InputStream) content).close();
+            } catch (final IOException e) {
+                // already consumed
+            }
+        }
+    }
+
+    /**
+     * A new digest for the content hash of a file of the
+     * {@link pro.zhantss.lucene.store.database.config.StorageLayout#DEDUPLICATED} layout, updated by the output while
+     * the file is written.
+     *
+     * @param directory
+     * @return <code>null</code> with the other layouts
+     * @throws DatabaseDirectoryException
+     */
+    public MessageDigest newContentDigest(final DatabaseDirectory directory) throws DatabaseDirectoryException {
+        if (!directory.getConfig().isDeduplicated()) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new DatabaseDirectoryException("Failed to create the " + CONTENT_HASH_ALGORITHM + " digest", e);
+        }
+    }
+
+    /**
+     * @param digest
+     * @return the hexadecimal content hash, <code>null</code> without digest
+     */
+    public String contentHash(final MessageDigest digest) {
+        if (digest == null) {
+            return null;
+        }
+        final byte[] bytes = digest.digest();
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private String contentHash(final DatabaseDirectory directory, final String name, final Object content,
+            final String hash) throws DatabaseDirectoryException {
+        if (hash != null) {
+            return hash;
+        }
+        if (!(content instanceof byte[])) {
+            closeContent(content);
+            throw rollback(directory, name, new DatabaseDirectoryException("No content hash for " + name));
+        }
+        final MessageDigest digest = newContentDigest(directory);
+        digest.update((byte[]) content);
+        return contentHash(digest);
+    }
+
+    /**
+     * Stores the content of a file in the shared content table, or only takes a reference when it is already there.
+     * Two writers storing the same new content race on the primary key, the loser takes a reference instead.
+     * <p/>
+     * The content table is shared by other index tables, so its rows are only updated by short statements of their
+     * own and never within a {@link DatabaseTransaction}: the references taken by a transaction rolled back are
+     * released then.
+     */
+    private void saveContent(final DatabaseDirectory directory, final String hash, final Object content,
+            final long length) throws DatabaseDirectoryException {
+        if (acquireContent(directory, hash)) {
+            return;
+        }
+        final Blob[] locator = new Blob[1];
+        try {
+            final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
+            final String sqlContentInsert = directory.getSql().sqlContentInsert();
+            JdbcTemplate.executeUpdate(connection, sqlContentInsert,
+                    new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                        @Override
+                        public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                            ps.setString(1, hash);
+                            if (content instanceof InputStream) {
+                                locator[0] = setContent(directory, ps, 2, (InputStream) content, length);
+                            } else {
+                                ps.setBytes(2, (byte[]) content);
+                            }
+                            ps.setLong(3, length);
+                        }
+                    });
+        } catch (final DatabaseDirectoryException e) {
+            if (!acquireContent(directory, hash)) {
+                throw e;
+            }
+        } finally {
+            if (locator[0] != null) {
+                try {
+                    locator[0].free();
+                } catch (final SQLException e) {
+                    // the driver releases it with the connection
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the content was already stored and is now referenced once more
+     */
+    private boolean acquireContent(final DatabaseDirectory directory, final String hash)
+            throws DatabaseDirectoryException {
+        return updateContent(directory, directory.getSql().sqlContentAcquire(), hash) > 0;
+    }
+
+    /**
+     * Drops a reference to a stored content, and deletes it once no longer referenced.
+     *
+     * @param directory
+     * @param hash
+     * @throws DatabaseDirectoryException
+     */
+    void releaseContent(final DatabaseDirectory directory, final String hash) throws DatabaseDirectoryException {
+        updateContent(directory, directory.getSql().sqlContentRelease(), hash);
+        updateContent(directory, directory.getSql().sqlContentPurge(), hash);
+    }
+
+    private int updateContent(final DatabaseDirectory directory, final String sql, final String hash)
+            throws DatabaseDirectoryException {
         final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        JdbcTemplate.executeUpdate(connection, sqlInsert, new JdbcTemplate.PrepateStatementAwareCallback() {
+        return JdbcTemplate.executeUpdate(connection, sql, new JdbcTemplate.PrepateStatementAwareCallback() {
+
+            @Override
+            public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                ps.setString(1, hash);
+            }
+        });
+    }
+
+    /**
+     * @param directory
+     * @param connection
+     * @param name
+     * @return the content hash of a file, <code>null</code> if it is empty or does not exist
+     * @throws DatabaseDirectoryException
+     */
+    String fileHash(final DatabaseDirectory directory, final Connection connection, final String name)
+            throws DatabaseDirectoryException {
+        final String sqlSelectHash = directory.getSql().sqlSelectHash();
+        return (String) JdbcTemplate.executeSelect(connection, sqlSelectHash, new JdbcTemplate.ExecuteSelectCallback() {
 
             @Override
             public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
-                ps.setFetchSize(1);
                 ps.setString(1, name);
-                if (length == 0) {
-                    ps.setNull(2, Types.BLOB);
-                } else if (content instanceof InputStream) {
-                    //ps.setBinaryStream(2, (InputStream) content, length);
-                	byte[] buffer = DataHandler.streamToByteListAndClose((InputStream)content);
-                	ps.setBytes(2, buffer);
+            }
+
+            @Override
+            public Object execute(final ResultSet rs) throws Exception {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        });
+    }
+
+    /**
+     * Inserts the metadata row of a file of which all the chunks were saved with
+     * {@link #saveChunk(DatabaseDirectory, String, int, byte[], int, int)}, making it visible.
+     *
+     * @param directory
+     * @param name
+     * @param length
+     * @throws DatabaseDirectoryException
+     */
+    public void saveChunkedFile(final DatabaseDirectory directory, final String name, final long length)
+            throws DatabaseDirectoryException {
+        saveFile(directory, name, null, length);
+    }
+
+    /**
+     * Inserts a single chunk row of a file being written with the {@link DatabaseConfig#isChunked()} layout.
+     *
+     * @param directory
+     * @param name
+     * @param chunk
+     * @param b
+     * @param offset
+     * @param length
+     * @throws DatabaseDirectoryException
+     */
+    public void saveChunk(final DatabaseDirectory directory, final String name, final int chunk, final byte[] b,
+            final int offset, final int length) throws DatabaseDirectoryException {
+        final String sqlChunkInsert = directory.getSql().sqlChunkInsert();
+        try {
+            final Connection connection = getWriteConnection(directory, name);
+            JdbcTemplate.executeUpdate(connection, sqlChunkInsert, new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                @Override
+                public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                    ps.setString(1, name);
+                    ps.setInt(2, chunk);
+                    ps.setBytes(3, DatabaseChunkCodec.encode(directory, name, b, offset, length));
+                }
+            });
+        } catch (final DatabaseDirectoryException e) {
+            throw rollback(directory, name, e);
+        }
+    }
+
+    /**
+     * Binds the content of a file written as a stream, see {@link DatabaseConfig#getUploadMode()}.
+     *
+     * @return the locator to free once the statement is executed, if any
+     */
+    private Blob setContent(final DatabaseDirectory directory, final PreparedStatement ps, final int index,
+            final InputStream content, final long length) throws SQLException, IOException {
+        switch (directory.getConfig().getUploadMode()) {
+        case STREAM:
+            ps.setBinaryStream(index, content, length);
+            return null;
+        case LOCATOR:
+            final Blob blob = ps.getConnection().createBlob();
+            final OutputStream out = blob.setBinaryStream(1);
+            try {
+                final byte[] buffer = new byte[UPLOAD_BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+            ps.setBlob(index, blob);
+            return blob;
+        default:
+            // the length is known, no intermediate growing buffer
+            final byte[] bytes = new byte[(int) length];
+            if (DataHandler.readFully(content, bytes, 0, bytes.length) < bytes.length) {
+                throw new DatabaseDirectoryException("Truncated content, expected " + length + " bytes");
+            }
+            ps.setBytes(index, bytes);
+            return null;
+        }
+    }
+
+    /**
+     * Splits the content in {@link DatabaseConfig#getChunkSize()} rows of the chunk table.
+     *
+     * @param directory
+     * @param name
+     * @param content
+     * @throws DatabaseDirectoryException
+     */
+    private void saveChunks(final DatabaseDirectory directory, final String name, final Object content)
+            throws DatabaseDirectoryException {
+        final int chunkSize = directory.getConfig().getChunkSize();
+        final String sqlChunkInsert = directory.getSql().sqlChunkInsert();
+        final Connection connection = getWriteConnection(directory, name);
+        JdbcTemplate.executeUpdates(connection, sqlChunkInsert, new JdbcTemplate.RepeatedStatementAwareCallback() {
+
+            private final byte[] buffer = new byte[chunkSize];
+            private int chunk = 0;
+
+            @Override
+            public boolean fillNextPrepareStatement(final PreparedStatement ps) throws Exception {
+                final byte[] bytes;
+                if (content instanceof InputStream) {
+                    final InputStream stream = (InputStream) content;
+                    final int read = DataHandler.readFully(stream, buffer, 0, chunkSize);
+                    if (read <= 0) {
+                        stream.close();
+                        return false;
+                    }
+                    bytes = DatabaseChunkCodec.encode(directory, name, buffer, 0, read);
                 } else {
-                    //ps.setBinaryStream(2, new ByteArrayInputStream((byte[]) content), length);
-                	ps.setBytes(2, (byte[]) content);
+                    final byte[] array = (byte[]) content;
+                    final long offset = (long) chunk * chunkSize;
+                    if (offset >= array.length) {
+                        return false;
+                    }
+                    bytes = DatabaseChunkCodec.encode(directory, name, array, (int) offset,
+                            (int) Math.min(chunkSize, array.length - offset));
                 }
-                ps.setLong(3, length);
+                ps.setString(1, name);
+                ps.setInt(2, chunk++);
+                ps.setBytes(3, bytes);
+                return true;
             }
         });
     }
@@ -254,8 +1236,22 @@ public class DatabaseDirectoryHandler {
      * @throws DatabaseDirectoryException
      */
     public void deleteFile(final DatabaseDirectory directory, final String name) throws DatabaseDirectoryException {
+        cache.invalidate(directory, name);
+        final DatabaseTransaction transaction = directory.getTransaction();
+        if (transaction != null) {
+            if (DatabaseTransaction.isTransactional(name) && transaction.delete(name)) {
+                directory.getCatalog().remove(name);
+                return;
+            }
+            if (DatabaseTransaction.isLock(name)) {
+                // a released write lock ends the writer that saw a rolled back transaction
+                transaction.reset();
+            }
+        }
+        final String hash = directory.getConfig().isDeduplicated() ? fileHash(directory,
+                DataSourceUtils.getConnection(directory.getDataSource()), name) : null;
         final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlDelete = directory.getConfig().sqlDelete(directory.getIndexTableName());
+        final String sqlDelete = directory.getSql().sqlDelete();
         JdbcTemplate.executeUpdate(connection, sqlDelete, new JdbcTemplate.PrepateStatementAwareCallback() {
 
             @Override
@@ -264,6 +1260,35 @@ public class DatabaseDirectoryHandler {
                 ps.setString(1, name);
             }
         });
+        if (directory.getConfig().isChunked()) {
+            final Connection chunkConnection = DataSourceUtils.getConnection(directory.getDataSource());
+            final String sqlChunkDelete = directory.getSql().sqlChunkDelete();
+            JdbcTemplate.executeUpdate(chunkConnection, sqlChunkDelete,
+                    new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                        @Override
+                        public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                            ps.setString(1, name);
+                        }
+                    });
+        }
+        if (directory.getConfig().isSplit()) {
+            final Connection contentConnection = DataSourceUtils.getConnection(directory.getDataSource());
+            final String sqlSplitContentDelete = directory.getSql().sqlSplitContentDelete();
+            JdbcTemplate.executeUpdate(contentConnection, sqlSplitContentDelete,
+                    new JdbcTemplate.PrepateStatementAwareCallback() {
+
+                        @Override
+                        public void fillPrepareStatement(final PreparedStatement ps) throws Exception {
+                            ps.setString(1, name);
+                        }
+                    });
+        }
+        directory.getCatalog().remove(name);
+        if (hash != null) {
+            // once the index row is gone, a failure only keeps the content stored
+            releaseContent(directory, hash);
+        }
     }
 
     /**
@@ -273,8 +1298,8 @@ public class DatabaseDirectoryHandler {
      * @throws DatabaseDirectoryException
      */
     public boolean existsFile(final DatabaseDirectory directory, final String name) throws DatabaseDirectoryException {
-        final Connection connection = DataSourceUtils.getConnection(directory.getDataSource());
-        final String sqlSelectName = directory.getConfig().sqlSelectName(directory.getIndexTableName());
+        final Connection connection = getConnection(directory, name);
+        final String sqlSelectName = directory.getSql().sqlSelectName();
         return (Boolean) JdbcTemplate.executeSelect(connection, sqlSelectName,
                 new JdbcTemplate.ExecuteSelectCallback() {
 
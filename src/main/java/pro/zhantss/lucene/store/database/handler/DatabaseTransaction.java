@@ -0,0 +1,338 @@
+package pro.zhantss.lucene.store.database.handler;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.cache.DatabaseBlockCache;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+import pro.zhantss.lucene.store.database.datasource.DataSourceUtils;
+import pro.zhantss.lucene.store.database.datasource.DatabaseConnectionPool;
+import pro.zhantss.lucene.store.database.datasource.DelegatingConnectionProxy;
+import pro.zhantss.lucene.store.database.datasource.TransactionAwareDataSourceProxy;
+
+/**
+ * The database transaction of a {@link DatabaseDirectory} with {@link DatabaseConfig#isTransactionalCommit()}.
+ * <p/>
+ * The files written and deleted between two Lucene commits go through a single connection without auto-commit, which
+ * is committed once the next <code>segments_N</code> is saved. Deletes are queued and sent in a single JDBC batch
+ * before the connection is used for anything else. Until the commit the files of the transaction are only visible on
+ * its connection, so the handler reads them, and the whole table while a transaction is open, through it: the
+ * statements on the connection run one at a time. Lock files and <code>segments.gen</code>, written by Lucene after
+ * <code>segments_N</code>, are kept out of the transaction, and so are the deletes of the files not written in the
+ * open transaction, such as the ones Lucene deletes once a commit made them obsolete: they would otherwise stay
+ * uncommitted, and their rows locked, until the next Lucene commit.
+ * <p/>
+ * With the {@link pro.zhantss.lucene.store.database.config.StorageLayout#DEDUPLICATED} layout the shared content
+ * table stays out of the transaction: the contents referenced by the files written are released if it is rolled back,
+ * the ones of the files deleted once it is committed.
+ * <p/>
+ * When a statement of the transaction fails, the transaction is rolled back and the following commits fail until the
+ * write lock is released, since the index writer still references the files that were lost.
+ *
+ */
+public class DatabaseTransaction {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseTransaction.class);
+    private static final DatabaseBlockCache cache = DatabaseBlockCache.INSTANCE;
+    private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+
+    private final DatabaseDirectory directory;
+    private Connection target;
+    private Connection connection;
+    private final Set<String> names = new HashSet<String>();
+    private final List<String> deletes = new ArrayList<String>();
+    private final List<String> acquired = new ArrayList<String>();
+    private final List<String> released = new ArrayList<String>();
+    private DatabaseDirectoryException failure;
+
+    public DatabaseTransaction(final DatabaseDirectory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param name
+     * @return <code>true</code> if saving the file commits the transaction
+     */
+    public static boolean isCommitPoint(final String name) {
+        return name.startsWith(IndexFileNames.SEGMENTS + "_");
+    }
+
+    /**
+     * @param name
+     * @return <code>false</code> for the lock files, which must be visible to the other processes at once, and for
+     *         <code>segments.gen</code>, written after the commit point
+     */
+    public static boolean isTransactional(final String name) {
+        return !isLock(name) && !IndexFileNames.SEGMENTS_GEN.equals(name);
+    }
+
+    /**
+     * @param name
+     * @return <code>true</code> for the lock files
+     */
+    public static boolean isLock(final String name) {
+        return name.endsWith(".lock");
+    }
+
+    /**
+     * @return <code>true</code> if files were written or deleted since the last commit
+     */
+    public synchronized boolean isOpen() {
+        return !names.isEmpty();
+    }
+
+    /**
+     * @param name
+     * @return <code>true</code> if the file was written or deleted since the last commit
+     */
+    public synchronized boolean contains(final String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * @return the connection of the transaction, with the queued deletes executed
+     * @throws DatabaseDirectoryException
+     */
+    public synchronized Connection getConnection() throws DatabaseDirectoryException {
+        if (connection == null) {
+            open();
+        }
+        flushDeletes();
+        return connection;
+    }
+
+    /**
+     * @param name
+     * @return the connection to write a file in the transaction
+     * @throws DatabaseDirectoryException
+     */
+    public synchronized Connection getConnection(final String name) throws DatabaseDirectoryException {
+        names.add(name);
+        return getConnection();
+    }
+
+    /**
+     * Queues the delete of a file written in the open transaction.
+     *
+     * @param name
+     * @return <code>false</code> if the file was not written in the open transaction, to be deleted at once
+     */
+    public synchronized boolean delete(final String name) {
+        if (!names.contains(name)) {
+            return false;
+        }
+        deletes.add(name);
+        return true;
+    }
+
+    /**
+     * Records a reference to a stored content taken by a file written in the transaction.
+     *
+     * @param hash
+     */
+    synchronized void acquired(final String hash) {
+        acquired.add(hash);
+    }
+
+    /**
+     * Commits the files written and deleted since the last commit.
+     *
+     * @throws DatabaseDirectoryException
+     *             if the transaction was rolled back since the write lock was obtained
+     */
+    public synchronized void commit() throws DatabaseDirectoryException {
+        if (failure != null) {
+            throw new DatabaseDirectoryException("Transaction of " + directory + " was rolled back", failure);
+        }
+        if (connection == null) {
+            return;
+        }
+        try {
+            flushDeletes();
+            synchronized (connection) {
+                target.commit();
+            }
+            LOGGER.debug("{}: committed {} files", this, names.size());
+            names.clear();
+            acquired.clear();
+            releaseContents(released);
+        } catch (final SQLException e) {
+            final DatabaseDirectoryException failure = new DatabaseDirectoryException("Failed to commit " + this, e);
+            rollback(failure);
+            throw failure;
+        } catch (final DatabaseDirectoryException e) {
+            rollback(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Rolls back the files written and deleted since the last commit, after a statement of the transaction failed.
+     *
+     * @param cause
+     */
+    public synchronized void rollback(final DatabaseDirectoryException cause) {
+        LOGGER.warn("{}: rolling back {} files: {}", this, names.size(), cause.getMessage());
+        if (connection != null) {
+            synchronized (connection) {
+                try {
+                    target.rollback();
+                } catch (final SQLException e) {
+                    LOGGER.warn("{}: failed to roll back: {}", this, e.getMessage());
+                }
+            }
+        }
+        for (final String name : names) {
+            cache.invalidate(directory, name);
+        }
+        names.clear();
+        deletes.clear();
+        released.clear();
+        releaseContents(acquired);
+        directory.getCatalog().invalidate();
+        failure = cause;
+    }
+
+    /**
+     * Forgets a rolled back transaction, once the writer that saw it released its lock.
+     */
+    public synchronized void reset() {
+        failure = null;
+    }
+
+    /**
+     * Commits what is pending and releases the connection.
+     *
+     * @throws DatabaseDirectoryException
+     */
+    public synchronized void close() throws DatabaseDirectoryException {
+        try {
+            if (isOpen()) {
+                commit();
+            }
+        } finally {
+            if (target != null) {
+                final Connection target = this.target;
+                this.target = null;
+                connection = null;
+                DataSourceUtils.releaseConnection(target);
+            }
+        }
+    }
+
+    private void open() throws DatabaseDirectoryException {
+        DataSource dataSource = directory.getDataSource();
+        if (dataSource instanceof DatabaseConnectionPool) {
+            // not pinned to the thread that happens to open it
+            try {
+                target = ((DatabaseConnectionPool) dataSource).getUnpinnedConnection();
+            } catch (final SQLException e) {
+                throw new DatabaseDirectoryException("Failed to open jdbc connection", e);
+            }
+        } else {
+            if (dataSource instanceof TransactionAwareDataSourceProxy) {
+                // not bound to the thread that happens to open it
+                dataSource = ((TransactionAwareDataSourceProxy) dataSource).getTargetDataSource();
+            }
+            target = DataSourceUtils.getConnection(dataSource);
+        }
+        try {
+            target.setAutoCommit(false);
+        } catch (final SQLException e) {
+            DataSourceUtils.releaseConnection(target);
+            target = null;
+            throw new DatabaseDirectoryException("Failed to disable auto-commit", e);
+        }
+        connection = new TransactionConnectionProxy(target);
+    }
+
+    private void flushDeletes() throws DatabaseDirectoryException {
+        if (deletes.isEmpty()) {
+            return;
+        }
+        final List<String> batch = new ArrayList<String>(deletes);
+        deletes.clear();
+        final DatabaseConfig config = directory.getConfig();
+        if (config.isDeduplicated()) {
+            for (final String name : batch) {
+                final String hash = handler.fileHash(directory, connection, name);
+                if (hash != null) {
+                    released.add(hash);
+                }
+            }
+        }
+        executeDeletes(directory.getSql().sqlDelete(), batch);
+        if (config.isChunked()) {
+            executeDeletes(directory.getSql().sqlChunkDelete(), batch);
+        }
+        if (config.isSplit()) {
+            executeDeletes(directory.getSql().sqlSplitContentDelete(), batch);
+        }
+    }
+
+    private void releaseContents(final List<String> hashes) {
+        for (final String hash : hashes) {
+            try {
+                handler.releaseContent(directory, hash);
+            } catch (final DatabaseDirectoryException e) {
+                // only stored once more than needed
+                LOGGER.warn("{}: failed to release the content {}: {}", this, hash, e.getMessage());
+            }
+        }
+        hashes.clear();
+    }
+
+    private void executeDeletes(final String sqlDelete, final List<String> batch) throws DatabaseDirectoryException {
+        JdbcTemplate.executeBatch(connection, sqlDelete, new JdbcTemplate.RepeatedStatementAwareCallback() {
+
+            private final Iterator<String> it = batch.iterator();
+
+            @Override
+            public boolean fillNextPrepareStatement(final PreparedStatement ps) throws Exception {
+                if (!it.hasNext()) {
+                    return false;
+                }
+                ps.setString(1, it.next());
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(directory).toString();
+    }
+
+    /**
+     * Shares the connection of the transaction: it is neither closed nor committed by {@link JdbcTemplate}.
+     */
+    private static final class TransactionConnectionProxy extends DelegatingConnectionProxy {
+
+        public TransactionConnectionProxy(final Connection target) {
+            super(target);
+        }
+
+        @Override
+        public boolean isControlConnection() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package pro.zhantss.lucene.store.database.handler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+
+/**
+ * Runs the uploads of the files closed by the outputs of a {@link DatabaseDirectory}.
+ * <p/>
+ * Without {@link DatabaseConfig#isWriteBehind()} an upload runs on the closing thread. Otherwise it is queued on a
+ * pool of {@link DatabaseConfig#getUploadThreads()} threads, each uploading on its own connection, and the output
+ * returns immediately: at most {@link DatabaseConfig#getWriteBehindMaxPending()} files and
+ * {@link DatabaseConfig#getWriteBehindMaxPendingBytes()} bytes are pending at a time (the closing thread waits beyond),
+ * {@link #await(Collection)} is the durability point used by <code>sync</code>, and the directory waits for the
+ * pending upload of a file before reading or deleting it.
+ * <p/>
+ * With {@link DatabaseConfig#isTransactionalCommit()} the uploads all go through the connection of the transaction,
+ * one statement at a time, so a single thread is used whatever the number configured.
+ *
+ */
+public class DatabaseUploader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseUploader.class);
+
+    /**
+     * Saves a closed file to the database, and releases what held its content.
+     */
+    public static interface Upload {
+
+        void upload() throws IOException;
+    }
+
+    private final DatabaseDirectory directory;
+    private final Map<String, Future<Void>> pending = new HashMap<String, Future<Void>>();
+    private Semaphore slots;
+    private final Object bytesLock = new Object();
+    private long pendingBytes = 0;
+    private ExecutorService executor;
+
+    public DatabaseUploader(final DatabaseDirectory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Runs or queues the upload of a file.
+     *
+     * @param name
+     * @param length
+     *            the number of bytes left to upload
+     * @param upload
+     * @throws IOException
+     *             if the upload ran on the calling thread and failed
+     */
+    public void submit(final String name, final long length, final Upload upload) throws IOException {
+        if (!directory.getConfig().isWriteBehind()) {
+            upload.upload();
+            return;
+        }
+        // a file rewritten under the same name (segments.gen) is uploaded in order
+        discard(name);
+        final Semaphore slots = slots();
+        try {
+            slots.acquire();
+        } catch (final InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        }
+        final long bytes;
+        try {
+            bytes = acquireBytes(length);
+        } catch (final RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        LOGGER.debug("{}.submit({}, {})", this, name, length);
+        final Future<Void> future;
+        try {
+            future = executor().submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        upload.upload();
+                        return null;
+                    } finally {
+                        releaseBytes(bytes);
+                        slots.release();
+                    }
+                }
+            });
+        } catch (final RuntimeException e) {
+            releaseBytes(bytes);
+            slots.release();
+            throw e;
+        }
+        synchronized (pending) {
+            pending.put(name, future);
+        }
+    }
+
+    /**
+     * Waits for the pending upload of a file, if any.
+     *
+     * @param name
+     * @throws IOException
+     *             if the upload failed
+     */
+    public void await(final String name) throws IOException {
+        final Future<Void> future;
+        synchronized (pending) {
+            future = pending.get(name);
+        }
+        if (future != null) {
+            get(name, future);
+        }
+    }
+
+    /**
+     * Waits for the pending uploads of the given files, all of them are awaited even if one failed.
+     *
+     * @param names
+     * @throws IOException
+     *             the first failure
+     */
+    public void await(final Collection<String> names) throws IOException {
+        IOException failure = null;
+        for (final String name : names) {
+            try {
+                await(name);
+            } catch (final IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits for all the pending uploads.
+     *
+     * @throws IOException
+     */
+    public void awaitAll() throws IOException {
+        final List<String> names;
+        synchronized (pending) {
+            names = new ArrayList<String>(pending.keySet());
+        }
+        await(names);
+    }
+
+    private void get(final String name, final Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (final InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (final ExecutionException e) {
+            // kept, every later wait for the file fails the same way until it is discarded
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new DatabaseDirectoryException(e.getCause());
+        }
+        synchronized (pending) {
+            if (pending.get(name) == future) {
+                pending.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Waits for the pending upload of a file and forgets it, even if it failed. Used before the file is deleted or
+     * written again.
+     *
+     * @param name
+     */
+    public void discard(final String name) {
+        final Future<Void> future;
+        synchronized (pending) {
+            future = pending.remove(name);
+        }
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (final InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (final ExecutionException e) {
+            LOGGER.warn("{}: discarding the failed upload of {}: {}", this, name, e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Waits until the bytes fit in {@link DatabaseConfig#getWriteBehindMaxPendingBytes()}, a larger file waits until
+     * nothing else is pending.
+     *
+     * @return the bytes accounted for the upload
+     */
+    private long acquireBytes(final long length) {
+        final long maxBytes = directory.getConfig().getWriteBehindMaxPendingBytes();
+        final long bytes = Math.min(length, maxBytes);
+        synchronized (bytesLock) {
+            while (pendingBytes > 0 && pendingBytes + bytes > maxBytes) {
+                try {
+                    bytesLock.wait();
+                } catch (final InterruptedException e) {
+                    throw new ThreadInterruptedException(e);
+                }
+            }
+            pendingBytes += bytes;
+        }
+        return bytes;
+    }
+
+    private void releaseBytes(final long bytes) {
+        synchronized (bytesLock) {
+            pendingBytes -= bytes;
+            bytesLock.notifyAll();
+        }
+    }
+
+    private synchronized Semaphore slots() {
+        if (slots == null) {
+            slots = new Semaphore(directory.getConfig().getWriteBehindMaxPending());
+        }
+        return slots;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            final String prefix = "DatabaseUploader-" + directory.getIndexTableName() + "-";
+            final DatabaseConfig config = directory.getConfig();
+            // more threads would only wait for the connection of the transaction
+            final int threads = config.isTransactionalCommit() ? 1 : config.getUploadThreads();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Waits for the pending uploads and stops the background threads.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        try {
+            awaitAll();
+        } finally {
+            synchronized (this) {
+                if (executor != null) {
+                    executor.shutdown();
+                    executor = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(directory).toString();
+    }
+}
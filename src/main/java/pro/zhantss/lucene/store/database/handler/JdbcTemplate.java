@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
 import pro.zhantss.lucene.store.database.datasource.DataSourceUtils;
+import pro.zhantss.lucene.store.database.datasource.DatabaseStatementCache;
 
 /**
  * Helper class that isused to encapsulate resource and transaction handling related to <code>DataSource</code>,
@@ -20,6 +21,7 @@ import pro.zhantss.lucene.store.database.datasource.DataSourceUtils;
 class JdbcTemplate {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JdbcTemplate.class);
+    private static final DatabaseStatementCache statements = DatabaseStatementCache.INSTANCE;
 
     /**
      * A callback interface used to initialize a Jdbc <code>PreparedStatement</code>.
@@ -43,6 +45,19 @@ class JdbcTemplate {
         Object execute(ResultSet rs) throws Exception;
     }
 
+    /**
+     * A callback used to fill the same <code>PreparedStatement</code> several times, one execution per fill.
+     */
+    static interface RepeatedStatementAwareCallback {
+
+        /**
+         * Fill the given <code>PreparedStatement</code> for the next execution.
+         *
+         * @return <code>false</code> if there is nothing left to execute
+         */
+        boolean fillNextPrepareStatement(PreparedStatement ps) throws Exception;
+    }
+
     private JdbcTemplate() {
     }
 
@@ -58,21 +73,27 @@ class JdbcTemplate {
      */
     static Object executeSelect(final Connection connection, final String sql, final ExecuteSelectCallback callback)
             throws DatabaseDirectoryException {
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        try {
-            ps = connection.prepareStatement(sql);
-            callback.fillPrepareStatement(ps);
-            rs = ps.executeQuery();
-            return callback.execute(rs);
-        } catch (final Exception e) {
-            LOGGER.warn("DatabaseDirectory: failed to execute sql [{}]: e", sql, e.getMessage());
-            throw (DatabaseDirectoryException) (e instanceof DatabaseDirectoryException ? e : new DatabaseDirectoryException(
-                    "Failed to execute sql [" + sql + "]", e));
-        } finally {
-            DataSourceUtils.closeResultSet(rs);
-            DataSourceUtils.closeStatement(ps);
-            DataSourceUtils.releaseConnection(connection);
+        // a connection shared by a DatabaseTransaction runs one statement at a time
+        synchronized (connection) {
+            PreparedStatement ps = null;
+            boolean reusable = false;
+            ResultSet rs = null;
+            try {
+                ps = statements.prepare(connection, sql);
+                callback.fillPrepareStatement(ps);
+                rs = ps.executeQuery();
+                final Object result = callback.execute(rs);
+                reusable = true;
+                return result;
+            } catch (final Exception e) {
+                LOGGER.warn("DatabaseDirectory: failed to execute sql [{}]: e", sql, e.getMessage());
+                throw (DatabaseDirectoryException) (e instanceof DatabaseDirectoryException ? e
+                        : new DatabaseDirectoryException("Failed to execute sql [" + sql + "]", e));
+            } finally {
+                DataSourceUtils.closeResultSet(rs);
+                releaseStatement(connection, sql, ps, reusable);
+                DataSourceUtils.releaseConnection(connection);
+            }
         }
     }
 
@@ -84,23 +105,107 @@ class JdbcTemplate {
      * @param connection
      * @param sql
      * @param callback
+     * @return the number of rows updated
      * @throws DatabaseDirectoryException
      */
-    static void executeUpdate(final Connection connection, final String sql,
+    static int executeUpdate(final Connection connection, final String sql,
             final PrepateStatementAwareCallback callback) throws DatabaseDirectoryException {
-        PreparedStatement ps = null;
-        try {
-            ps = connection.prepareStatement(sql);
-            callback.fillPrepareStatement(ps);
-            ps.executeUpdate();
-            DataSourceUtils.commitConnection(connection);
-        } catch (final Exception e) {
-            LOGGER.warn("DatabaseDirectory: failed to execute sql [{}]: e", sql, e.getMessage());
-            throw (DatabaseDirectoryException) (e instanceof DatabaseDirectoryException ? e : new DatabaseDirectoryException(
-                    "Failed to execute sql [" + sql + "]", e));
-        } finally {
+        synchronized (connection) {
+            PreparedStatement ps = null;
+            boolean reusable = false;
+            try {
+                ps = statements.prepare(connection, sql);
+                callback.fillPrepareStatement(ps);
+                final int count = ps.executeUpdate();
+                reusable = true;
+                DataSourceUtils.commitConnection(connection);
+                return count;
+            } catch (final Exception e) {
+                LOGGER.warn("DatabaseDirectory: failed to execute sql [{}]: e", sql, e.getMessage());
+                throw (DatabaseDirectoryException) (e instanceof DatabaseDirectoryException ? e
+                        : new DatabaseDirectoryException("Failed to execute sql [" + sql + "]", e));
+            } finally {
+                releaseStatement(connection, sql, ps, reusable);
+                DataSourceUtils.releaseConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * A template method to execute the same sql update several times with a single <code>PreparedStatement</code>,
+     * as long as the callback keeps filling it. The connection is committed once all the executions are done.
+     *
+     * @param connection
+     * @param sql
+     * @param callback
+     * @throws DatabaseDirectoryException
+     */
+    static void executeUpdates(final Connection connection, final String sql,
+            final RepeatedStatementAwareCallback callback) throws DatabaseDirectoryException {
+        synchronized (connection) {
+            PreparedStatement ps = null;
+            boolean reusable = false;
+            try {
+                ps = statements.prepare(connection, sql);
+                while (callback.fillNextPrepareStatement(ps)) {
+                    ps.executeUpdate();
+                    ps.clearParameters();
+                }
+                reusable = true;
+                DataSourceUtils.commitConnection(connection);
+            } catch (final Exception e) {
+                LOGGER.warn("DatabaseDirectory: failed to execute sql [{}]: {}", sql, e.getMessage());
+                throw (DatabaseDirectoryException) (e instanceof DatabaseDirectoryException ? e
+                        : new DatabaseDirectoryException("Failed to execute sql [" + sql + "]", e));
+            } finally {
+                releaseStatement(connection, sql, ps, reusable);
+                DataSourceUtils.releaseConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #executeUpdates(Connection, String, RepeatedStatementAwareCallback)}, but all the fills are sent to
+     * the database in a single JDBC batch.
+     *
+     * @param connection
+     * @param sql
+     * @param callback
+     * @throws DatabaseDirectoryException
+     */
+    static void executeBatch(final Connection connection, final String sql,
+            final RepeatedStatementAwareCallback callback) throws DatabaseDirectoryException {
+        synchronized (connection) {
+            PreparedStatement ps = null;
+            boolean reusable = false;
+            try {
+                ps = statements.prepare(connection, sql);
+                while (callback.fillNextPrepareStatement(ps)) {
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                reusable = true;
+                DataSourceUtils.commitConnection(connection);
+            } catch (final Exception e) {
+                LOGGER.warn("DatabaseDirectory: failed to execute sql [{}]: {}", sql, e.getMessage());
+                throw (DatabaseDirectoryException) (e instanceof DatabaseDirectoryException ? e
+                        : new DatabaseDirectoryException("Failed to execute sql [" + sql + "]", e));
+            } finally {
+                releaseStatement(connection, sql, ps, reusable);
+                DataSourceUtils.releaseConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Returns the statement to the {@link DatabaseStatementCache}, unless it failed.
+     */
+    private static void releaseStatement(final Connection connection, final String sql, final PreparedStatement ps,
+            final boolean reusable) {
+        if (reusable) {
+            statements.release(connection, sql, ps);
+        } else {
             DataSourceUtils.closeStatement(ps);
-            DataSourceUtils.releaseConnection(connection);
         }
     }
 }
@@ -0,0 +1,103 @@
+package pro.zhantss.lucene.store.database.index;
+
+import java.util.ArrayDeque;
+
+/**
+ * A process wide pool of the fixed-size blocks of the {@link DatabasePagedBuffer} instances, so that the in-memory
+ * outputs recycle their memory instead of allocating large arrays for every file.
+ * <p/>
+ * The pool only bounds the memory it retains, blocks are allocated beyond it when it is empty. It also counts the
+ * blocks in use, against a process wide budget of buffered bytes ({@link #hasRoom(long)}) that the outputs check
+ * before keeping a file in memory.
+ *
+ */
+public class DatabaseBufferPool {
+
+    /**
+     * The size of a block (in bytes). Currently 32K.
+     */
+    public static final int BLOCK_SIZE = 32 * 1024;
+
+    /**
+     * The default budget (in bytes) of the blocks kept for reuse. Currently 16M.
+     */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * The default budget (in bytes) of the blocks in use by all the in-memory outputs. Currently 64M.
+     */
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+
+    public static final DatabaseBufferPool INSTANCE = new DatabaseBufferPool();
+
+    private final ArrayDeque<byte[]> free = new ArrayDeque<byte[]>();
+    private int maxPooledBlocks = (int) (DEFAULT_MAX_POOLED_BYTES / BLOCK_SIZE);
+    private long usedBlocks = 0;
+    private long maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+
+    private DatabaseBufferPool() {
+    }
+
+    /**
+     * @return a block of {@link #BLOCK_SIZE} bytes, with undefined content
+     */
+    public synchronized byte[] acquire() {
+        final byte[] block = free.pollFirst();
+        usedBlocks++;
+        return block != null ? block : new byte[BLOCK_SIZE];
+    }
+
+    /**
+     * Gives a block back, it must no longer be used by the caller.
+     *
+     * @param block
+     */
+    public synchronized void release(final byte[] block) {
+        usedBlocks--;
+        if (block.length == BLOCK_SIZE && free.size() < maxPooledBlocks) {
+            free.addFirst(block);
+        }
+    }
+
+    /**
+     * @return the memory retained by the pool
+     */
+    public synchronized long getPooledBytes() {
+        return (long) free.size() * BLOCK_SIZE;
+    }
+
+    /**
+     * @return the memory of the blocks in use
+     */
+    public synchronized long getBufferedBytes() {
+        return usedBlocks * BLOCK_SIZE;
+    }
+
+    /**
+     * @param bytes
+     * @return <code>true</code> if <code>bytes</code> more can be buffered within the budget
+     */
+    public synchronized boolean hasRoom(final long bytes) {
+        return usedBlocks * BLOCK_SIZE + bytes <= maxBufferedBytes;
+    }
+
+    /**
+     * @param maxBufferedBytes
+     *            the budget of the blocks in use by all the in-memory outputs, beyond which they spill to temporary
+     *            files
+     */
+    public synchronized void setMaxBufferedBytes(final long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /**
+     * @param maxPooledBytes
+     *            the budget of the blocks kept for reuse, <code>0</code> disables the pooling
+     */
+    public synchronized void setMaxPooledBytes(final long maxPooledBytes) {
+        maxPooledBlocks = (int) Math.min(Integer.MAX_VALUE, Math.max(0, maxPooledBytes / BLOCK_SIZE));
+        while (free.size() > maxPooledBlocks) {
+            free.pollLast();
+        }
+    }
+}
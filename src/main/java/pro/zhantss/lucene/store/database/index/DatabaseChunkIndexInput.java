@@ -0,0 +1,132 @@
+package pro.zhantss.lucene.store.database.index;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.apache.lucene.store.BufferedIndexInput;
+import org.apache.lucene.store.IOContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.cache.DatabaseBlockCache;
+import pro.zhantss.lucene.store.database.config.StorageLayout;
+import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+
+/**
+ * An <code>IndexInput</code> implementation for files stored with the {@link StorageLayout#CHUNKED} layout. Every
+ * buffer read only fetches the chunk rows covering the requested range, and the last fetched chunk is kept to serve
+ * the following reads. When the {@link DatabaseBlockCache} is enabled the reads go through it instead, unless the
+ * input is opened with a <code>READONCE</code> context.
+ *
+ */
+public class DatabaseChunkIndexInput extends BufferedIndexInput {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseChunkIndexInput.class);
+    private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+    private static final DatabaseBlockCache cache = DatabaseBlockCache.INSTANCE;
+
+    private final DatabaseDirectory directory;
+    private final String name;
+    private final long length;
+    private final int chunkSize;
+    private final boolean readOnce;
+    private long pos = 0;
+
+    private int currentChunk = -1;
+    private byte[] currentContent;
+
+    private final DatabaseBlockCache.BlockLoader loader = new DatabaseBlockCache.BlockLoader() {
+
+        @Override
+        public void load(final long pos, final byte[] b, final int offset, final int length) throws IOException {
+            if (handler.fileRange(directory, name, pos, b, offset, length) < length) {
+                throw new EOFException("read past EOF: " + DatabaseChunkIndexInput.this);
+            }
+        }
+    };
+
+    public DatabaseChunkIndexInput(final DatabaseDirectory directory, final String name, final IOContext context)
+            throws IOException {
+        super(name, context);
+        this.directory = directory;
+        this.name = name;
+        chunkSize = directory.getConfig().getChunkSize();
+        readOnce = context.readOnce;
+        length = handler.fileLengthIfExists(directory, name);
+        if (length < 0) {
+            throw new FileNotFoundException(name + " in " + directory);
+        }
+    }
+
+    @Override
+    protected void readInternal(final byte[] b, final int offset, final int length) throws IOException {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.readInternal({}, {}, {})", this, b, offset, length);
+        }
+        if (pos + length > this.length) {
+            throw new EOFException("read past EOF: " + this);
+        }
+        if (!readOnce && cache.isEnabled() && DatabaseBlockCache.isCacheable(name)) {
+            cache.read(directory, name, this.length, pos, b, offset, length, loader);
+            pos += length;
+            return;
+        }
+        int chunk = (int) (pos / chunkSize);
+        final int lastChunk = (int) ((pos + length - 1) / chunkSize);
+        byte[][] fetched = null;
+        int fetchedFrom = 0;
+        int done = 0;
+        while (done < length) {
+            if (chunk != currentChunk) {
+                if (fetched == null) {
+                    fetched = handler.fileChunks(directory, name, chunk, lastChunk);
+                    fetchedFrom = chunk;
+                }
+                currentContent = fetched[chunk - fetchedFrom];
+                currentChunk = chunk;
+                if (currentContent == null) {
+                    currentChunk = -1;
+                    throw new EOFException("missing chunk " + chunk + ": " + this);
+                }
+            }
+            final int inChunk = (int) ((pos + done) - (long) chunk * chunkSize);
+            final int toCopy = Math.min(length - done, currentContent.length - inChunk);
+            if (toCopy <= 0) {
+                throw new EOFException("truncated chunk " + chunk + ": " + this);
+            }
+            System.arraycopy(currentContent, inChunk, b, offset + done, toCopy);
+            done += toCopy;
+            chunk++;
+        }
+        pos += length;
+    }
+
+    @Override
+    protected void seekInternal(final long pos) throws IOException {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.seekInternal({})", this, pos);
+        }
+        this.pos = pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOGGER.trace("{}.close()", this);
+        currentContent = null;
+        currentChunk = -1;
+    }
+
+    @Override
+    public long length() {
+        LOGGER.trace("{}.length()", this);
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(directory).append("/")
+                .append(name).toString();
+    }
+}
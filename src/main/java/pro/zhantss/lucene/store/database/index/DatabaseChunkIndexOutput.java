@@ -0,0 +1,222 @@
+package pro.zhantss.lucene.store.database.index;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.BufferedChecksum;
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.config.StorageLayout;
+import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+import pro.zhantss.lucene.store.database.handler.DatabaseUploader;
+
+/**
+ * An <code>IndexOutput</code> implementation for the {@link StorageLayout#CHUNKED} layout, that uploads every chunk
+ * as soon as it is full instead of buffering the whole file.
+ * <p/>
+ * Two chunk buffers are used in turn: while one is uploaded on a background thread, the next one is filled. The
+ * metadata row, which makes the file visible, is inserted on close once all the chunks are stored (in the background
+ * with {@link pro.zhantss.lucene.store.database.config.DatabaseConfig#isWriteBehind()}).
+ * <p/>
+ * A seek may only move within the chunk being filled, the previous ones being already stored: like the other outputs
+ * it fails with an <code>IOException</code> past the end, and also before the start of that chunk.
+ *
+ */
+public class DatabaseChunkIndexOutput extends IndexOutput {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseChunkIndexOutput.class);
+    private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "DatabaseChunkUpload-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final String name;
+    private final DatabaseDirectory directory;
+    @SuppressWarnings("unused")
+    private final IOContext context;
+
+    private final int chunkSize;
+    private byte[] buffer;
+    private byte[] spare;
+    private int upto = 0;
+    // the bytes written in the current chunk, when a seek moved upto back
+    private int filled = 0;
+    private int chunk = 0;
+    private Future<?> upload;
+    private final Checksum digest = new BufferedChecksum(new CRC32());
+    private boolean closed = false;
+
+    public DatabaseChunkIndexOutput(final DatabaseDirectory directory, final String name, final IOContext context)
+            throws DatabaseDirectoryException {
+        this.directory = directory;
+        this.name = name;
+        this.context = context;
+        chunkSize = directory.getConfig().getChunkSize();
+        buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public long getFilePointer() {
+        return (long) chunk * chunkSize + upto;
+    }
+
+    public long getChecksum() throws IOException {
+        LOGGER.trace("{}.getChecksum()", this);
+        return digest.getValue();
+    }
+
+    @Override
+    public void writeByte(final byte b) throws IOException {
+        if (upto == chunkSize) {
+            uploadChunk();
+        }
+        buffer[upto++] = b;
+        digest.update(b);
+    }
+
+    @Override
+    public void writeBytes(final byte[] b, final int offset, final int length) throws IOException {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.writeBytes({}, {}, {})", this, b, offset, length);
+        }
+        digest.update(b, offset, length);
+        int done = 0;
+        while (done < length) {
+            if (upto == chunkSize) {
+                uploadChunk();
+            }
+            final int toCopy = Math.min(length - done, chunkSize - upto);
+            System.arraycopy(b, offset + done, buffer, upto, toCopy);
+            upto += toCopy;
+            done += toCopy;
+        }
+    }
+
+    /**
+     * Hands the full buffer to the background upload, after the previous one completed, and continues in the other
+     * buffer.
+     */
+    private void uploadChunk() throws IOException {
+        awaitUpload();
+        final byte[] full = buffer;
+        final int length = upto;
+        final int index = chunk;
+        upload = executor.submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                handler.saveChunk(directory, name, index, full, 0, length);
+                return null;
+            }
+        });
+        buffer = spare != null ? spare : new byte[chunkSize];
+        spare = full;
+        upto = 0;
+        filled = 0;
+        chunk++;
+    }
+
+    private void awaitUpload() throws IOException {
+        if (upload == null) {
+            return;
+        }
+        try {
+            upload.get();
+        } catch (final InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new DatabaseDirectoryException(e.getCause());
+        } finally {
+            upload = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        LOGGER.trace("{}.flush()", this);
+    }
+
+    @Override
+    @Deprecated
+    public void seek(final long pos) throws IOException {
+        LOGGER.trace("{}.seek({})", this, pos);
+        final long start = (long) chunk * chunkSize;
+        filled = filled();
+        if (pos < start) {
+            throw new IOException("cannot seek to " + pos + ", the chunks before " + start
+                    + " are already stored and cannot be rewritten: " + this);
+        }
+        if (pos > start + filled) {
+            throw new IOException("cannot seek to " + pos + " in a file of length " + (start + filled) + ": " + this);
+        }
+        upto = (int) (pos - start);
+    }
+
+    private int filled() {
+        return Math.max(filled, upto);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return (long) chunk * chunkSize + filled();
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOGGER.trace("{}.close()", this);
+        if (closed) {
+            return;
+        }
+        closed = true;
+        final int last = filled();
+        final long length = length();
+        directory.getUploader().submit(name, last, new DatabaseUploader.Upload() {
+
+            @Override
+            public void upload() throws IOException {
+                try {
+                    awaitUpload();
+                    if (last > 0) {
+                        handler.saveChunk(directory, name, chunk, buffer, 0, last);
+                    }
+                    handler.saveChunkedFile(directory, name, length);
+                } finally {
+                    buffer = null;
+                    spare = null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(directory).append("/")
+                .append(name).toString();
+    }
+}
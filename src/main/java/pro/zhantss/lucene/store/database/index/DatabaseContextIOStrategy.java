@@ -0,0 +1,88 @@
+package pro.zhantss.lucene.store.database.index;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.cache.DatabaseBlockCache;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+
+/**
+ * The default {@link DatabaseIOStrategy}:
+ * <ul>
+ * <li><code>MERGE</code> inputs are read ahead in large blocks ({@link DatabaseReadAheadIndexInput}),</li>
+ * <li><code>READONCE</code> inputs never go through the {@link DatabaseBlockCache},</li>
+ * <li>other inputs go through the {@link DatabaseBlockCache} when it is enabled,</li>
+ * <li>outputs of the {@link pro.zhantss.lucene.store.database.config.StorageLayout#CHUNKED} layout upload their
+ * chunks while they are written ({@link DatabaseChunkIndexOutput}),</li>
+ * <li>other outputs of which the segment is estimated below {@link DatabaseConfig#getThreshold()} stay in memory
+ * ({@link DatabaseMemoryIndexOutput}), larger ones start in memory while the estimate fits in the budget of the
+ * {@link DatabaseBufferPool} and go to a temporary file otherwise ({@link DatabaseFileIndexOutput}), and outputs
+ * without estimate start in memory and spill once over the threshold ({@link DatabaseIndexOutput}). The outputs that
+ * start in memory also spill when the budget runs out.</li>
+ * </ul>
+ *
+ */
+public class DatabaseContextIOStrategy implements DatabaseIOStrategy {
+
+    public static final DatabaseContextIOStrategy INSTANCE = new DatabaseContextIOStrategy();
+
+    private static final DatabaseBlockCache cache = DatabaseBlockCache.INSTANCE;
+    private static final DatabaseBufferPool pool = DatabaseBufferPool.INSTANCE;
+
+    @Override
+    public IndexInput openInput(final DatabaseDirectory directory, final String name, final IOContext context)
+            throws IOException {
+        final DatabaseConfig config = directory.getConfig();
+        final boolean cacheable = DatabaseBlockCache.isCacheable(name);
+        if (context.context == IOContext.Context.MERGE && config.getReadAheadBlocks() > 0 && cacheable) {
+            return new DatabaseReadAheadIndexInput(directory, name, context);
+        }
+        if (config.isChunked()) {
+            return new DatabaseChunkIndexInput(directory, name, context);
+        }
+        if (!context.readOnce && cache.isEnabled() && cacheable) {
+            // lazy input, the blocks are shared through the cache
+            return new DatabaseFetchIndexInput(directory, name, context);
+        }
+        return new DatabaseIndexInput(directory, name, context);
+    }
+
+    @Override
+    public IndexOutput createOutput(final DatabaseDirectory directory, final String name, final IOContext context)
+            throws IOException {
+        if (directory.getConfig().isChunked()) {
+            return new DatabaseChunkIndexOutput(directory, name, context);
+        }
+        final long estimatedSize = estimatedSize(context);
+        if (estimatedSize < 0) {
+            return new DatabaseIndexOutput(directory, name, context);
+        }
+        if (estimatedSize < directory.getConfig().getThreshold()) {
+            return new DatabaseMemoryIndexOutput(directory, name, context);
+        }
+        if (pool.hasRoom(estimatedSize)) {
+            return new DatabaseIndexOutput(directory, name, context, estimatedSize);
+        }
+        return new DatabaseFileIndexOutput(directory, name, context);
+    }
+
+    /**
+     * The size of the segment being flushed or merged, an upper bound of the size of any of its files.
+     *
+     * @param context
+     * @return <code>-1</code> if unknown
+     */
+    protected long estimatedSize(final IOContext context) {
+        if (context.flushInfo != null) {
+            return context.flushInfo.estimatedSegmentSize;
+        }
+        if (context.mergeInfo != null) {
+            return context.mergeInfo.estimatedMergeBytes;
+        }
+        return -1;
+    }
+}
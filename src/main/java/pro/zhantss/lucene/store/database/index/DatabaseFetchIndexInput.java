@@ -1,7 +1,8 @@
 package pro.zhantss.lucene.store.database.index;
 
+import java.io.EOFException;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 
 import org.apache.lucene.store.BufferedIndexInput;
 import org.apache.lucene.store.IOContext;
@@ -9,47 +10,82 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pro.zhantss.lucene.store.database.DatabaseDirectory;
-import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
+import pro.zhantss.lucene.store.database.cache.DatabaseBlockCache;
 import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
 
 /**
  * An <code>IndexInput</code> implementation, that for every buffer read will go and fetch the data from the database,
  * to reduce the amount of memory consumed.
+ * <p/>
+ * Only the range covered by the buffer is transferred, see
+ * {@link DatabaseDirectoryHandler#fileRange(DatabaseDirectory, String, long, byte[], int, int)}, and goes through the
+ * {@link DatabaseBlockCache} when it is enabled.
  *
  */
 public class DatabaseFetchIndexInput extends BufferedIndexInput {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseFetchIndexInput.class);
     private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+    private static final DatabaseBlockCache cache = DatabaseBlockCache.INSTANCE;
+
+    /**
+     * Every buffer refill is a round trip, so the buffer is never smaller than 16K.
+     */
+    private static final int MIN_BUFFER_SIZE = 16 * 1024;
 
     private final DatabaseDirectory directory;
     private final String name;
     private final long length;
-    private int pos = 0;
+    private long pos = 0;
+
+    private final DatabaseBlockCache.BlockLoader loader = new DatabaseBlockCache.BlockLoader() {
+
+        @Override
+        public void load(final long pos, final byte[] b, final int offset, final int length) throws IOException {
+            fetch(pos, b, offset, length);
+        }
+    };
 
     public DatabaseFetchIndexInput(final DatabaseDirectory directory, final String name, final IOContext context)
-            throws DatabaseDirectoryException {
-        super(name, context);
+            throws IOException {
+        super(name, Math.max(BufferedIndexInput.bufferSize(context), MIN_BUFFER_SIZE));
         this.directory = directory;
         this.name = name;
-        length = handler.fileLength(directory, name);
+        length = handler.fileLengthIfExists(directory, name);
+        if (length < 0) {
+            throw new FileNotFoundException(name + " in " + directory);
+        }
     }
 
     @Override
     protected void readInternal(final byte[] b, final int offset, final int length) throws IOException {
-        LOGGER.trace("{}.readInternal({}, {}, {})", this, b, offset, length);
-        final InputStream stream = handler.fileStream(directory, name);
-        stream.skip(pos);
-        final byte[] aux = new byte[length];
-        stream.read(aux, 0, length);
-        System.arraycopy(aux, 0, b, offset, length);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.readInternal({}, {}, {})", this, b, offset, length);
+        }
+        if (pos + length > this.length) {
+            throw new EOFException("read past EOF: " + this);
+        }
+        if (cache.isEnabled() && DatabaseBlockCache.isCacheable(name)) {
+            cache.read(directory, name, this.length, pos, b, offset, length, loader);
+        } else {
+            fetch(pos, b, offset, length);
+        }
         pos += length;
     }
 
+    private void fetch(final long pos, final byte[] b, final int offset, final int length) throws IOException {
+        final int read = handler.fileRange(directory, name, pos, b, offset, length);
+        if (read < length) {
+            throw new EOFException("read past EOF: " + this);
+        }
+    }
+
     @Override
     protected void seekInternal(final long pos) throws IOException {
-        LOGGER.trace("{}.seekInternal({})", this, pos);
-        this.pos = (int) pos;
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.seekInternal({})", this, pos);
+        }
+        this.pos = pos;
     }
 
     @Override
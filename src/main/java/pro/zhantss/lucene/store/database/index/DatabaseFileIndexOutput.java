@@ -3,9 +3,12 @@ package pro.zhantss.lucene.store.database.index;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -14,10 +17,11 @@ import org.apache.lucene.store.IOContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import pro.zhantss.lucene.data.handler.DataHandler;
+import pro.zhantss.lucene.store.BufferedChecksum;
 import pro.zhantss.lucene.store.database.DatabaseDirectory;
 import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
 import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+import pro.zhantss.lucene.store.database.handler.DatabaseUploader;
 
 /**
  * An <code>IndexOutput</code> implemenation that writes all the data to a
@@ -25,6 +29,16 @@ import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
  * <p/>
  * Usefull for large files that are known in advance to be larger then the
  * acceptable threshold configured.
+ * <p/>
+ * The writes go through the buffer of <code>BufferedIndexOutput</code>, which
+ * is written to the temporary file with a single <code>FileChannel</code> call
+ * once full, and the checksum is computed over the same buffer.
+ * <p/>
+ * A seek flushes the buffer and moves the position of the channel. The
+ * checksum stays the one of the bytes in the order they were written, like
+ * the one of <code>BufferedIndexOutput</code>; the file being rewritten, the
+ * checksum and the content hash saved with it are then computed again from
+ * the temporary file.
  *
  */
 public class DatabaseFileIndexOutput extends BufferedIndexOutput {
@@ -32,23 +46,28 @@ public class DatabaseFileIndexOutput extends BufferedIndexOutput {
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(DatabaseFileIndexOutput.class);
 	private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
-	
-	private static final int CHUNK_SIZE = 8192;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
 
 	private final String name;
 	private final DatabaseDirectory directory;
 	@SuppressWarnings("unused")
 	private final IOContext context;
 
-	private final RandomAccessFile file;
+	private final FileOutputStream file;
+	private final FileChannel channel;
 	private final File tempFile;
-	private final Checksum digest = new CRC32();
-	private long pos = 0;
+	private final Checksum digest = new BufferedChecksum(new CRC32());
+	private final MessageDigest contentDigest;
+	private long end = 0;
+	private boolean rewritten = false;
+	private boolean closed = false;
 
 	public DatabaseFileIndexOutput(final DatabaseDirectory directory,
 			final String name, final IOContext context)
 					throws DatabaseDirectoryException {
-		super(CHUNK_SIZE);
+		super(BUFFER_SIZE);
 		this.directory = directory;
 		this.name = name;
 		this.context = context;
@@ -56,53 +75,123 @@ public class DatabaseFileIndexOutput extends BufferedIndexOutput {
 			// 创建临时文件
 			tempFile = File.createTempFile(directory.getIndexTableName() + "_"
 					+ name + "_" + System.currentTimeMillis(), ".ljt");
-			file = new RandomAccessFile(tempFile, "rw");
+			file = new FileOutputStream(tempFile);
 		} catch (final IOException e) {
 			throw new DatabaseDirectoryException(e);
 		}
-	}
-
-	@Override
-	public long getFilePointer() {
-		LOGGER.trace("{}.getFilePointer()", this);
-		return pos;
+		channel = file.getChannel();
+		contentDigest = handler.newContentDigest(directory);
 	}
 
 	public long getChecksum() throws IOException {
 		LOGGER.trace("{}.getChecksum()", this);
+		flush();
 		return digest.getValue();
 	}
 
 	@Override
-	public void writeByte(final byte b) throws IOException {
-		LOGGER.trace("{}.writeByte({})", this, b);
-		file.write(b);
-		digest.update(b);
-		pos++;
+	protected void flushBuffer(final byte[] b, final int offset, final int size)
+			throws IOException {
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("{}.flushBuffer({}, {}, {})", this, b, offset, size);
+		}
+		digest.update(b, offset, size);
+		if (contentDigest != null) {
+			contentDigest.update(b, offset, size);
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(b, offset, size);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		end = Math.max(end, channel.position());
+	}
+
+	@Override
+	@Deprecated
+	public void seek(final long pos) throws IOException {
+		LOGGER.trace("{}.seek({})", this, pos);
+		final long length = length();
+		if (pos < 0 || pos > length) {
+			throw new IOException("cannot seek to " + pos
+					+ " in a file of length " + length + ": " + this);
+		}
+		// flushes the buffer at the current position first
+		super.seek(pos);
+		channel.position(pos);
+		if (pos != end) {
+			rewritten = true;
+		}
 	}
 
 	@Override
-	public void writeBytes(final byte[] b, final int offset, final int length)
-			throws IOException {
-		LOGGER.trace("{}.writeBytes({}, {}, {})", this, b, offset, length);
-		file.write(b, offset, length);
-		digest.update(b, offset, length);
-		pos += length;
+	public long length() throws IOException {
+		return Math.max(end, getFilePointer());
 	}
 
 	@Override
 	public void close() throws IOException {
 		LOGGER.trace("{}.close()", this);
-		// file.seek(0);
-		seek(0);	// Lucene 4.7
-		final InputStream stream = new BufferedInputStream(
-				new FileInputStream(file.getFD()));
-		// 兼容性修改, 读取出来再存入
-		byte[] content = DataHandler.streamToByteListAndClose(stream);
-		//handler.saveFile(directory, name, stream, file.length());
-		handler.saveFile(directory, name, content, content.length);
-		file.close();
-		tempFile.delete();
+		if (closed) {
+			return;
+		}
+		closed = true;
+		final long length;
+		try {
+			super.close();
+			length = length();
+		} finally {
+			file.close();
+		}
+		final long checksum;
+		final String hash;
+		if (rewritten) {
+			final Checksum crc = new BufferedChecksum(new CRC32());
+			final MessageDigest content = handler.newContentDigest(directory);
+			digest(crc, content);
+			checksum = crc.getValue();
+			hash = handler.contentHash(content);
+		} else {
+			checksum = digest.getValue();
+			hash = handler.contentHash(contentDigest);
+		}
+		directory.getUploader().submit(name, length, new DatabaseUploader.Upload() {
+
+			@Override
+			public void upload() throws IOException {
+				try {
+					// streamed to the database, see DatabaseConfig#getUploadMode()
+					final InputStream stream = new BufferedInputStream(
+							new FileInputStream(tempFile), UPLOAD_BUFFER_SIZE);
+					try {
+						handler.saveFile(directory, name, stream, length, checksum, hash);
+					} finally {
+						stream.close();
+					}
+				} finally {
+					tempFile.delete();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Computes the checksum and the content hash of the temporary file.
+	 */
+	private void digest(final Checksum crc, final MessageDigest content)
+			throws IOException {
+		final InputStream stream = new FileInputStream(tempFile);
+		try {
+			final byte[] b = new byte[UPLOAD_BUFFER_SIZE];
+			int read;
+			while ((read = stream.read(b)) != -1) {
+				crc.update(b, 0, read);
+				if (content != null) {
+					content.update(b, 0, read);
+				}
+			}
+		} finally {
+			stream.close();
+		}
 	}
 
 	@Override
@@ -111,29 +200,4 @@ public class DatabaseFileIndexOutput extends BufferedIndexOutput {
 				.append(":").append(directory).append("/").append(name)
 				.toString();
 	}
-	
-	// TODO 测试
-	// 以下代码均为测试
-	
-	@Override
-	public void seek(long pos) throws IOException {
-		super.seek(pos);
-		file.seek(pos);
-	}
-
-	@Override
-	public long length() throws IOException {
-		return file.length();
-	}
-
-	@Override
-	protected void flushBuffer(byte[] b, int offset, int size)
-			throws IOException {
-		while (size > 0) {
-			final int toWrite = Math.min(CHUNK_SIZE, size);
-			file.write(b, offset, toWrite);
-			offset += toWrite;
-			size -= toWrite;
-		}
-	}
 }
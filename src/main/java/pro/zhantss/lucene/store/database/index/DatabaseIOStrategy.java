@@ -0,0 +1,24 @@
+package pro.zhantss.lucene.store.database.index;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+
+/**
+ * Chooses the <code>IndexInput</code> and <code>IndexOutput</code> implementations of a {@link DatabaseDirectory}
+ * for a file, given the <code>IOContext</code> it is opened with.
+ * <p/>
+ * The local cache and the prefetched content of the directory are served before the strategy is consulted.
+ *
+ * @see DatabaseContextIOStrategy
+ */
+public interface DatabaseIOStrategy {
+
+    IndexInput openInput(DatabaseDirectory directory, String name, IOContext context) throws IOException;
+
+    IndexOutput createOutput(DatabaseDirectory directory, String name, IOContext context) throws IOException;
+}
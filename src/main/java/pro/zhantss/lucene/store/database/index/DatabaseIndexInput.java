@@ -1,67 +1,173 @@
 package pro.zhantss.lucene.store.database.index;
 
+import java.io.EOFException;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
-import org.apache.lucene.store.BufferedIndexInput;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pro.zhantss.lucene.store.database.DatabaseDirectory;
-import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
 import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
 
-public class DatabaseIndexInput extends BufferedIndexInput {
+/**
+ * An <code>IndexInput</code> implementation that reads the size and the whole content from the database in a single
+ * query, into a single immutable buffer (off-heap if
+ * {@link pro.zhantss.lucene.store.database.config.DatabaseConfig#isDirectContent()}).
+ * <p/>
+ * Reads go straight to the buffer, and clones and slices are views of it with their own position, so they cost no
+ * copy and can be used concurrently.
+ *
+ */
+public class DatabaseIndexInput extends IndexInput {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseFetchIndexInput.class);
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseIndexInput.class);
     private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
 
     private final DatabaseDirectory directory;
     private final String name;
-    private InputStream stream;
-    private final long length;
-    private int pos = 0;
+    private ByteBuffer buffer;
 
     public DatabaseIndexInput(final DatabaseDirectory directory, final String name, final IOContext context)
-            throws DatabaseDirectoryException {
-        super(name, context);
+            throws IOException {
+        this(directory, name, fetch(directory, name));
+    }
+
+    /**
+     * An input over content already read from the database.
+     *
+     * @param directory
+     * @param name
+     * @param content
+     */
+    public DatabaseIndexInput(final DatabaseDirectory directory, final String name, final byte[] content) {
+        super(name);
         this.directory = directory;
         this.name = name;
-        length = handler.fileLength(directory, name);
-        stream = length > 0l ? handler.fileStream(directory, name) : null;
+        buffer = wrap(directory, content);
+    }
+
+    private static byte[] fetch(final DatabaseDirectory directory, final String name) throws IOException {
+        final byte[] content = handler.fileContent(directory, name);
+        if (content == null) {
+            throw new FileNotFoundException(name + " in " + directory);
+        }
+        return content;
+    }
+
+    private DatabaseIndexInput(final DatabaseIndexInput input, final String description, final ByteBuffer buffer) {
+        super(description);
+        directory = input.directory;
+        name = input.name;
+        this.buffer = buffer;
+    }
+
+    private static ByteBuffer wrap(final DatabaseDirectory directory, final byte[] content) {
+        if (!directory.getConfig().isDirectContent()) {
+            return ByteBuffer.wrap(content);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content);
+        buffer.flip();
+        return buffer;
     }
 
     @Override
-    protected void readInternal(final byte[] b, final int offset, final int length) throws IOException {
-        LOGGER.trace("{}.readInternal({}, {}, {})", this, b, offset, length);
-        stream.reset();
-        stream.skip(pos);
-        final byte[] aux = new byte[length];
-        stream.read(aux, 0, length);
-        System.arraycopy(aux, 0, b, offset, length);
-        pos += length;
+    public byte readByte() throws IOException {
+        try {
+            return buffer.get();
+        } catch (final BufferUnderflowException e) {
+            throw new EOFException("read past EOF: " + this);
+        }
     }
 
     @Override
-    protected void seekInternal(final long pos) throws IOException {
-        LOGGER.trace("{}.seekInternal({})", this, pos);
-        this.pos = (int) pos;
+    public void readBytes(final byte[] b, final int offset, final int len) throws IOException {
+        try {
+            buffer.get(b, offset, len);
+        } catch (final BufferUnderflowException e) {
+            throw new EOFException("read past EOF: " + this);
+        }
     }
 
     @Override
-    public void close() throws IOException {
-        LOGGER.trace("{}.close()", this);
-        if (stream != null) {
-        	stream.close();
-        	stream = null;
+    public short readShort() throws IOException {
+        try {
+            return buffer.getShort();
+        } catch (final BufferUnderflowException e) {
+            throw new EOFException("read past EOF: " + this);
+        }
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        try {
+            return buffer.getInt();
+        } catch (final BufferUnderflowException e) {
+            throw new EOFException("read past EOF: " + this);
+        }
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        try {
+            return buffer.getLong();
+        } catch (final BufferUnderflowException e) {
+            throw new EOFException("read past EOF: " + this);
+        }
+    }
+
+    @Override
+    public long getFilePointer() {
+        return buffer.position();
+    }
+
+    @Override
+    public void seek(final long pos) throws IOException {
+        if (pos < 0 || pos > buffer.limit()) {
+            throw new EOFException("seek past EOF (" + pos + "): " + this);
         }
+        buffer.position((int) pos);
     }
 
     @Override
     public long length() {
-        LOGGER.trace("{}.length()", this);
-        return length;
+        return buffer.limit();
+    }
+
+    @Override
+    public DatabaseIndexInput clone() {
+        final DatabaseIndexInput clone = (DatabaseIndexInput) super.clone();
+        clone.buffer = buffer.duplicate();
+        return clone;
+    }
+
+    /**
+     * A view of <code>length</code> bytes starting at <code>offset</code>, positioned at its start.
+     *
+     * @param description
+     * @param offset
+     * @param length
+     * @return
+     */
+    public DatabaseIndexInput slice(final String description, final long offset, final long length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new IllegalArgumentException("slice(" + description + ") out of bounds: offset=" + offset
+                    + ", length=" + length + ": " + this);
+        }
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position((int) offset);
+        slice.limit((int) (offset + length));
+        return new DatabaseIndexInput(this, description + " [slice of " + name + "]", slice.slice());
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOGGER.trace("{}.close()", this);
     }
 
     @Override
@@ -1,11 +1,12 @@
 package pro.zhantss.lucene.store.database.index;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.security.MessageDigest;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -19,87 +20,179 @@ import pro.zhantss.lucene.store.database.DatabaseDirectory;
 import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
 import pro.zhantss.lucene.store.database.config.DatabaseConfig;
 import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+import pro.zhantss.lucene.store.database.handler.DatabaseUploader;
 
 /**
  * An <code>IndexOutput</code> implementation that initially writes the data to
- * a memory buffer. Once it exceeds the configured threshold (
- * {@link DatabaseConfig#setThreshold(long)}, will start working with a
- * temporary file, releasing the previous buffer.
+ * a memory buffer ({@link DatabasePagedBuffer}). Once it exceeds the configured threshold (
+ * {@link DatabaseConfig#setThreshold(long)}, or the size it was given, will start working with a
+ * temporary file, releasing the previous buffer. It also spills when the in-memory outputs of the process exhaust
+ * the budget of the {@link DatabaseBufferPool}.
+ * <p/>
+ * Used for the files of which the size is not known in advance, or is expected to fit in the budget.
+ * <p/>
+ * A seek flushes the buffer and moves the position of the memory buffer or the temporary file. As with
+ * {@link DatabaseFileIndexOutput}, the checksum and the content hash of a rewritten file are computed again from its
+ * content when the output is closed.
  *
  */
-public abstract class DatabaseIndexOutput extends IndexOutput {
+public class DatabaseIndexOutput extends IndexOutput {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseFileIndexOutput.class);
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseIndexOutput.class);
     private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+    private static final DatabaseBufferPool pool = DatabaseBufferPool.INSTANCE;
+
+    private static final int BUFFER_SIZE = 8192;
 
     private final String name;
     private final DatabaseDirectory directory;
     @SuppressWarnings("unused")
     private final IOContext context;
+    private final long maxMemorySize;
 
-    private ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    private DatabasePagedBuffer memory = new DatabasePagedBuffer();
     private RandomAccessFile file;
     private File tempFile;
     private final Checksum digest = new BufferedChecksum(new CRC32());
+    private final MessageDigest contentDigest;
 
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int upto = 0;
     private long pos = 0;
+    private long end = 0;
+    private boolean rewritten = false;
+    private boolean closed = false;
 
     public DatabaseIndexOutput(final DatabaseDirectory directory, final String name, final IOContext context)
             throws DatabaseDirectoryException {
+        this(directory, name, context, directory.getConfig().getThreshold());
+    }
+
+    /**
+     * @param directory
+     * @param name
+     * @param context
+     * @param maxMemorySize
+     *            the size beyond which the output spills to a temporary file
+     * @throws DatabaseDirectoryException
+     */
+    public DatabaseIndexOutput(final DatabaseDirectory directory, final String name, final IOContext context,
+            final long maxMemorySize) throws DatabaseDirectoryException {
         this.directory = directory;
         this.name = name;
         this.context = context;
+        this.maxMemorySize = maxMemorySize;
+        contentDigest = handler.newContentDigest(directory);
     }
 
     @Override
     public long getFilePointer() {
-        LOGGER.trace("{}.getFilePointer()", this);
-        return pos;
+        return pos + upto;
     }
 
     public long getChecksum() throws IOException {
         LOGGER.trace("{}.getChecksum()", this);
+        flushBuffer();
         return digest.getValue();
     }
 
     @Override
     public void writeByte(final byte b) throws IOException {
-        LOGGER.trace("{}.writeByte({})", this, b);
-        write(new byte[] { b }, 0, 1);
+        if (upto == buffer.length) {
+            flushBuffer();
+        }
+        buffer[upto++] = b;
     }
 
     @Override
     public void writeBytes(final byte[] b, final int offset, final int length) throws IOException {
-        LOGGER.trace("{}.writeBytes({}, {}, {})", this, b, offset, length);
-        write(b, offset, length);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.writeBytes({}, {}, {})", this, b, offset, length);
+        }
+        if (length <= buffer.length - upto) {
+            System.arraycopy(b, offset, buffer, upto, length);
+            upto += length;
+            return;
+        }
+        flushBuffer();
+        if (length >= buffer.length) {
+            write(b, offset, length);
+        } else {
+            System.arraycopy(b, offset, buffer, 0, length);
+            upto = length;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (upto > 0) {
+            write(buffer, 0, upto);
+            upto = 0;
+        }
     }
 
     private void write(final byte[] b, final int offset, final int length) throws IOException {
+        final long at = pos;
         pos += length;
-        if (file == null && directory.getConfig().getThreshold() > pos) {
-            baos.write(b, offset, length);
+        end = Math.max(end, pos);
+        if (file == null && maxMemorySize > end && pool.hasRoom(length)) {
+            memory.write(b, offset, length);
         } else {
             if (file == null) {
                 tempFile = File.createTempFile(
                         directory.getIndexTableName() + "_" + name + "_" + System.currentTimeMillis(), ".ljt");
                 file = new RandomAccessFile(tempFile, "rw");
-                file.write(baos.toByteArray(), 0, baos.size());
-                baos = null;
+                memory.writeTo(file);
+                memory.release();
+                memory = null;
+                file.seek(at);
             }
             file.write(b, offset, length);
         }
         digest.update(b, offset, length);
+        if (contentDigest != null) {
+            contentDigest.update(b, offset, length);
+        }
     }
 
     @Override
     public void close() throws IOException {
         LOGGER.trace("{}.close()", this);
-        final Object content = getContent();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushBuffer();
         final long length = getLength();
-        handler.saveFile(directory, name, content, length);
-        if (baos != null) {
-            baos.close();
-            baos = null;
+        final long checksum;
+        final String hash;
+        if (rewritten) {
+            final Checksum crc = new BufferedChecksum(new CRC32());
+            final MessageDigest content = handler.newContentDigest(directory);
+            digest(crc, content);
+            checksum = crc.getValue();
+            hash = handler.contentHash(content);
+        } else {
+            checksum = digest.getValue();
+            hash = handler.contentHash(contentDigest);
+        }
+        final Object content = getContent();
+        directory.getUploader().submit(name, length, new DatabaseUploader.Upload() {
+
+            @Override
+            public void upload() throws IOException {
+                try {
+                    handler.saveFile(directory, name, content, length, checksum, hash);
+                } finally {
+                    release();
+                }
+            }
+        });
+    }
+
+    private void release() throws IOException {
+        if (memory != null) {
+            memory.release();
+            memory = null;
         }
         if (file != null) {
             file.close();
@@ -109,19 +202,63 @@ public abstract class DatabaseIndexOutput extends IndexOutput {
         }
     }
 
+    @Override
+    public void flush() throws IOException {
+        LOGGER.trace("{}.flush()", this);
+    }
+
+    @Override
+    @Deprecated
+    public void seek(final long pos) throws IOException {
+        LOGGER.trace("{}.seek({})", this, pos);
+        flushBuffer();
+        if (pos < 0 || pos > end) {
+            throw new IOException("cannot seek to " + pos + " in a file of length " + end + ": " + this);
+        }
+        if (file != null) {
+            file.seek(pos);
+        } else {
+            memory.seek(pos);
+        }
+        this.pos = pos;
+        if (pos != end) {
+            rewritten = true;
+        }
+    }
+
+    @Override
+    public long length() throws IOException {
+        return Math.max(end, getFilePointer());
+    }
+
+    /**
+     * Computes the checksum and the content hash of the content written so far.
+     */
+    private void digest(final Checksum crc, final MessageDigest content) throws IOException {
+        final InputStream stream = (InputStream) getContent();
+        final byte[] b = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = stream.read(b)) != -1) {
+            crc.update(b, 0, read);
+            if (content != null) {
+                content.update(b, 0, read);
+            }
+        }
+    }
+
     private Object getContent() throws IOException {
         Object content = null;
         if (file != null) {
             file.seek(0);
             content = new BufferedInputStream(new FileInputStream(file.getFD()));
         } else {
-            content = baos.toByteArray();
+            content = memory.newInputStream();
         }
         return content;
     }
 
     private long getLength() throws IOException {
-        return file != null ? file.length() : baos.size();
+        return file != null ? file.length() : memory.size();
     }
 
     @Override
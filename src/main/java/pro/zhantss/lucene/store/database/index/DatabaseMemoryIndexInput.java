@@ -40,14 +40,18 @@ public class DatabaseMemoryIndexInput extends BufferedIndexInput {
 
     @Override
     protected void readInternal(final byte[] b, final int offset, final int length) throws IOException {
-        LOGGER.trace("{}.readInternal({}, {}, {})", this, b, offset, length);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.readInternal({}, {}, {})", this, b, offset, length);
+        }
         System.arraycopy(buffer.array(), pos, b, offset, length);
         pos += length;
     }
 
     @Override
     protected void seekInternal(final long pos) throws IOException {
-        LOGGER.trace("{}.seekInternal({})", this, pos);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.seekInternal({})", this, pos);
+        }
         this.pos = (int) pos;
     }
 
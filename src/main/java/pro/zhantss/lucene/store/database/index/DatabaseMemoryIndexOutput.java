@@ -1,7 +1,8 @@
 package pro.zhantss.lucene.store.database.index;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -10,15 +11,20 @@ import org.apache.lucene.store.IndexOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pro.zhantss.lucene.store.BufferedChecksum;
 import pro.zhantss.lucene.store.database.DatabaseDirectory;
 import pro.zhantss.lucene.store.database.DatabaseDirectoryException;
 import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+import pro.zhantss.lucene.store.database.handler.DatabaseUploader;
 
 /**
- * An <code>IndexOutput</code> implemenation that stores all the data written to it in memory, and flushes it to the
- * database when the output is closed.
+ * An <code>IndexOutput</code> implemenation that stores all the data written to it in memory (a
+ * {@link DatabasePagedBuffer}), and streams it to the database when the output is closed.
  * <p/>
- * Useful for small file entries like the segment file.
+ * Useful for small file entries like the segment file, or the files of a segment estimated below the threshold.
+ * <p/>
+ * A seek moves the position of the memory buffer. As with {@link DatabaseFileIndexOutput}, the checksum and the
+ * content hash of a rewritten file are computed again from its content when the output is closed.
  *
  */
 public class DatabaseMemoryIndexOutput extends IndexOutput {
@@ -31,20 +37,23 @@ public class DatabaseMemoryIndexOutput extends IndexOutput {
     @SuppressWarnings("unused")
     private final IOContext context;
 
-    private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    private final Checksum digest = new CRC32();
+    private final DatabasePagedBuffer memory = new DatabasePagedBuffer();
+    private final Checksum digest = new BufferedChecksum(new CRC32());
+    private final MessageDigest contentDigest;
     private long pos = 0;
+    private boolean rewritten = false;
+    private boolean closed = false;
 
     public DatabaseMemoryIndexOutput(final DatabaseDirectory directory, final String name, final IOContext context)
             throws DatabaseDirectoryException {
         this.directory = directory;
         this.name = name;
         this.context = context;
+        contentDigest = handler.newContentDigest(directory);
     }
 
     @Override
     public long getFilePointer() {
-        LOGGER.trace("{}.getFilePointer()", this);
         return pos;
     }
 
@@ -55,25 +64,72 @@ public class DatabaseMemoryIndexOutput extends IndexOutput {
 
     @Override
     public void writeByte(final byte b) throws IOException {
-        LOGGER.trace("{}.writeByte({})", this, b);
-        baos.write(b);
+        memory.write(b);
         digest.update(b);
+        if (contentDigest != null) {
+            contentDigest.update(b);
+        }
         pos++;
     }
 
     @Override
     public void writeBytes(final byte[] b, final int offset, final int length) throws IOException {
-        LOGGER.trace("{}.writeBytes({}, {}, {})", this, b, offset, length);
-        baos.write(b, offset, length);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.writeBytes({}, {}, {})", this, b, offset, length);
+        }
+        memory.write(b, offset, length);
         digest.update(b, offset, length);
+        if (contentDigest != null) {
+            contentDigest.update(b, offset, length);
+        }
         pos += length;
     }
 
     @Override
     public void close() throws IOException {
         LOGGER.trace("{}.close()", this);
-        final byte[] buffer = baos.toByteArray();
-        handler.saveFile(directory, name, buffer, buffer.length);
+        if (closed) {
+            return;
+        }
+        closed = true;
+        final long checksum;
+        final String hash;
+        if (rewritten) {
+            final Checksum crc = new BufferedChecksum(new CRC32());
+            final MessageDigest content = handler.newContentDigest(directory);
+            digest(crc, content);
+            checksum = crc.getValue();
+            hash = handler.contentHash(content);
+        } else {
+            checksum = digest.getValue();
+            hash = handler.contentHash(contentDigest);
+        }
+        directory.getUploader().submit(name, memory.size(), new DatabaseUploader.Upload() {
+
+            @Override
+            public void upload() throws IOException {
+                try {
+                    handler.saveFile(directory, name, memory.newInputStream(), memory.size(), checksum, hash);
+                } finally {
+                    memory.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the checksum and the content hash of the content written so far.
+     */
+    private void digest(final Checksum crc, final MessageDigest content) throws IOException {
+        final InputStream stream = memory.newInputStream();
+        final byte[] b = new byte[DatabaseBufferPool.BLOCK_SIZE];
+        int read;
+        while ((read = stream.read(b)) != -1) {
+            crc.update(b, 0, read);
+            if (content != null) {
+                content.update(b, 0, read);
+            }
+        }
     }
 
     @Override
@@ -84,17 +140,26 @@ public class DatabaseMemoryIndexOutput extends IndexOutput {
 
 	@Override
 	public void flush() throws IOException {
-		
+		LOGGER.trace("{}.flush()", this);
 	}
 
 	@Override
-	public void seek(long pos) throws IOException {
-		// TODO 自动生成的方法存根
+	@Deprecated
+	public void seek(final long pos) throws IOException {
+		LOGGER.trace("{}.seek({})", this, pos);
+		final long end = memory.size();
+		if (pos < 0 || pos > end) {
+			throw new IOException("cannot seek to " + pos + " in a file of length " + end + ": " + this);
+		}
+		memory.seek(pos);
+		this.pos = pos;
+		if (pos != end) {
+			rewritten = true;
+		}
 	}
 
 	@Override
 	public long length() throws IOException {
-		// TODO 自动生成的方法存根
-		return 0;
+		return memory.size();
 	}
 }
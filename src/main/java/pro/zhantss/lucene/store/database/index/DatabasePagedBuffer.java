@@ -0,0 +1,166 @@
+package pro.zhantss.lucene.store.database.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An in-memory byte buffer made of {@link DatabaseBufferPool#BLOCK_SIZE} blocks, like the <code>RAMFile</code> of
+ * Lucene: it grows without copying what was already written, and is read back as a stream without being flattened
+ * into a single array.
+ * <p/>
+ * The blocks are taken from and given back (see {@link #release()}) to the {@link DatabaseBufferPool}.
+ * <p/>
+ * A write goes at the position, the end unless {@link #seek(long)} moved it back, overwriting what was there.
+ *
+ */
+public class DatabasePagedBuffer {
+
+    private static final DatabaseBufferPool pool = DatabaseBufferPool.INSTANCE;
+    private static final int BLOCK_SIZE = DatabaseBufferPool.BLOCK_SIZE;
+
+    private final List<byte[]> blocks = new ArrayList<byte[]>();
+    private byte[] current;
+    private int currentIndex = -1;
+    private int upto = BLOCK_SIZE;
+    private long size = 0;
+
+    public void write(final byte b) {
+        if (upto == BLOCK_SIZE) {
+            nextBlock();
+        }
+        current[upto++] = b;
+        grow();
+    }
+
+    public void write(final byte[] b, final int offset, final int length) {
+        int done = 0;
+        while (done < length) {
+            if (upto == BLOCK_SIZE) {
+                nextBlock();
+            }
+            final int toCopy = Math.min(length - done, BLOCK_SIZE - upto);
+            System.arraycopy(b, offset + done, current, upto, toCopy);
+            upto += toCopy;
+            done += toCopy;
+        }
+        grow();
+    }
+
+    private void nextBlock() {
+        currentIndex++;
+        if (currentIndex == blocks.size()) {
+            blocks.add(pool.acquire());
+        }
+        current = blocks.get(currentIndex);
+        upto = 0;
+    }
+
+    private void grow() {
+        final long position = getPosition();
+        if (position > size) {
+            size = position;
+        }
+    }
+
+    /**
+     * Moves the position, at most to the end.
+     *
+     * @param pos
+     */
+    public void seek(final long pos) {
+        if (pos < 0 || pos > size) {
+            throw new IllegalArgumentException("position " + pos + " is outside of the buffer of size " + size);
+        }
+        if (pos % BLOCK_SIZE != 0) {
+            currentIndex = (int) (pos / BLOCK_SIZE);
+            upto = (int) (pos % BLOCK_SIZE);
+        } else {
+            // the end of the previous block, the next write moves to the following one
+            currentIndex = (int) (pos / BLOCK_SIZE) - 1;
+            upto = BLOCK_SIZE;
+        }
+        current = currentIndex >= 0 ? blocks.get(currentIndex) : null;
+    }
+
+    public long getPosition() {
+        return (long) currentIndex * BLOCK_SIZE + upto;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Writes the whole content to <code>out</code>, a block at a time.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        long remaining = size;
+        for (final byte[] block : blocks) {
+            final int length = (int) Math.min(BLOCK_SIZE, remaining);
+            out.write(block, 0, length);
+            remaining -= length;
+        }
+    }
+
+    /**
+     * A stream over the content, valid until the buffer is written to or released.
+     *
+     * @return
+     */
+    public InputStream newInputStream() {
+        return new InputStream() {
+
+            private long pos = 0;
+
+            @Override
+            public int read() {
+                if (pos >= size) {
+                    return -1;
+                }
+                final byte b = blocks.get((int) (pos / BLOCK_SIZE))[(int) (pos % BLOCK_SIZE)];
+                pos++;
+                return b & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] b, final int offset, final int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (pos >= size) {
+                    return -1;
+                }
+                final int inBlock = (int) (pos % BLOCK_SIZE);
+                final int toCopy = (int) Math.min(Math.min(length, BLOCK_SIZE - inBlock), size - pos);
+                System.arraycopy(blocks.get((int) (pos / BLOCK_SIZE)), inBlock, b, offset, toCopy);
+                pos += toCopy;
+                return toCopy;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, size - pos);
+            }
+        };
+    }
+
+    /**
+     * Gives the blocks back to the pool, the buffer is empty afterwards.
+     */
+    public void release() {
+        for (final byte[] block : blocks) {
+            pool.release(block);
+        }
+        blocks.clear();
+        current = null;
+        currentIndex = -1;
+        upto = BLOCK_SIZE;
+        size = 0;
+    }
+}
@@ -0,0 +1,203 @@
+package pro.zhantss.lucene.store.database.index;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.store.BufferedIndexInput;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.zhantss.lucene.store.database.DatabaseDirectory;
+import pro.zhantss.lucene.store.database.config.DatabaseConfig;
+import pro.zhantss.lucene.store.database.handler.DatabaseDirectoryHandler;
+
+/**
+ * An <code>IndexInput</code> implementation for sequential workloads (merges, full scans): the file is read in blocks
+ * of {@link DatabaseConfig#getReadAheadBlockSize()}, and once the access is sequential the next
+ * {@link DatabaseConfig#getReadAheadBlocks()} blocks are fetched on a background executor while the current one is
+ * consumed.
+ * <p/>
+ * With a {@link IOContext.Context#MERGE} context the access is assumed to be sequential from the first read. The
+ * blocks bypass the {@link pro.zhantss.lucene.store.database.cache.DatabaseBlockCache}, a merge would only evict the
+ * blocks of the searches.
+ *
+ */
+public class DatabaseReadAheadIndexInput extends BufferedIndexInput {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseReadAheadIndexInput.class);
+    private static final DatabaseDirectoryHandler handler = DatabaseDirectoryHandler.INSTANCE;
+
+    /**
+     * Number of consecutive blocks read before the access is considered sequential.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 2;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "DatabaseReadAhead-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final DatabaseDirectory directory;
+    private final String name;
+    private final long length;
+    private final int blockSize;
+    private final int readAheadBlocks;
+    private final boolean merge;
+    private long pos = 0;
+
+    private long currentBlock = -1;
+    private byte[] currentContent;
+    private int sequentialBlocks = 0;
+    private Map<Long, Future<byte[]>> inFlight = new LinkedHashMap<Long, Future<byte[]>>();
+
+    public DatabaseReadAheadIndexInput(final DatabaseDirectory directory, final String name, final IOContext context)
+            throws IOException {
+        super(name, context);
+        this.directory = directory;
+        this.name = name;
+        blockSize = directory.getConfig().getReadAheadBlockSize();
+        readAheadBlocks = directory.getConfig().getReadAheadBlocks();
+        merge = context.context == IOContext.Context.MERGE;
+        length = handler.fileLengthIfExists(directory, name);
+        if (length < 0) {
+            throw new FileNotFoundException(name + " in " + directory);
+        }
+    }
+
+    @Override
+    protected void readInternal(final byte[] b, final int offset, final int length) throws IOException {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.readInternal({}, {}, {})", this, b, offset, length);
+        }
+        if (pos + length > this.length) {
+            throw new EOFException("read past EOF: " + this);
+        }
+        int done = 0;
+        while (done < length) {
+            final long block = (pos + done) / blockSize;
+            if (block != currentBlock) {
+                moveTo(block);
+            }
+            final int inBlock = (int) (pos + done - block * blockSize);
+            final int toCopy = Math.min(length - done, currentContent.length - inBlock);
+            System.arraycopy(currentContent, inBlock, b, offset + done, toCopy);
+            done += toCopy;
+        }
+        pos += length;
+    }
+
+    private void moveTo(final long block) throws IOException {
+        sequentialBlocks = block == currentBlock + 1 ? sequentialBlocks + 1 : 0;
+        Future<byte[]> future = inFlight.remove(block);
+        // blocks behind, or not ahead anymore after a seek, are of no use
+        for (final Iterator<Map.Entry<Long, Future<byte[]>>> it = inFlight.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<Long, Future<byte[]>> entry = it.next();
+            if (entry.getKey() < block || entry.getKey() > block + readAheadBlocks) {
+                entry.getValue().cancel(false);
+                it.remove();
+            }
+        }
+        if (future == null) {
+            future = submit(block);
+        }
+        if (merge || sequentialBlocks >= SEQUENTIAL_THRESHOLD) {
+            final long blocks = (this.length + blockSize - 1) / blockSize;
+            for (long next = block + 1; next <= block + readAheadBlocks && next < blocks; next++) {
+                if (!inFlight.containsKey(next)) {
+                    inFlight.put(next, submit(next));
+                }
+            }
+        }
+        currentContent = get(future);
+        currentBlock = block;
+    }
+
+    private Future<byte[]> submit(final long block) {
+        final long start = block * blockSize;
+        final int size = (int) Math.min(blockSize, length - start);
+        return executor.submit(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() throws Exception {
+                final byte[] content = new byte[size];
+                if (handler.fileRange(directory, name, start, content, 0, size) < size) {
+                    throw new EOFException("read past EOF: " + DatabaseReadAheadIndexInput.this);
+                }
+                return content;
+            }
+        });
+    }
+
+    private byte[] get(final Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    protected void seekInternal(final long pos) throws IOException {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}.seekInternal({})", this, pos);
+        }
+        this.pos = pos;
+    }
+
+    @Override
+    public DatabaseReadAheadIndexInput clone() {
+        final DatabaseReadAheadIndexInput clone = (DatabaseReadAheadIndexInput) super.clone();
+        clone.inFlight = new LinkedHashMap<Long, Future<byte[]>>();
+        clone.sequentialBlocks = 0;
+        return clone;
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOGGER.trace("{}.close()", this);
+        for (final Future<byte[]> future : inFlight.values()) {
+            future.cancel(false);
+        }
+        inFlight.clear();
+        currentContent = null;
+        currentBlock = -1;
+    }
+
+    @Override
+    public long length() {
+        LOGGER.trace("{}.length()", this);
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append(this.getClass().getSimpleName()).append(":").append(directory).append("/")
+                .append(name).toString();
+    }
+}
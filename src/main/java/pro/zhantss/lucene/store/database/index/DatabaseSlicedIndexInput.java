@@ -0,0 +1,63 @@
+package pro.zhantss.lucene.store.database.index;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.apache.lucene.store.BufferedIndexInput;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+
+/**
+ * A slice of an <code>IndexInput</code> that is not a {@link DatabaseIndexInput}, used by the slicer of a
+ * {@link pro.zhantss.lucene.store.database.DatabaseDirectory} over the input it already opened.
+ *
+ */
+public class DatabaseSlicedIndexInput extends BufferedIndexInput {
+
+    private IndexInput base;
+    private final long offset;
+    private final long length;
+
+    public DatabaseSlicedIndexInput(final String description, final IndexInput base, final long offset,
+            final long length, final IOContext context) {
+        super(description + " [slice of " + base + "]", context);
+        if (offset < 0 || length < 0 || offset + length > base.length()) {
+            throw new IllegalArgumentException("slice(" + description + ") out of bounds: offset=" + offset
+                    + ", length=" + length + ": " + base);
+        }
+        this.base = base.clone();
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    protected void readInternal(final byte[] b, final int offset, final int length) throws IOException {
+        final long start = getFilePointer();
+        if (start + length > this.length) {
+            throw new EOFException("read past EOF: " + this);
+        }
+        base.seek(this.offset + start);
+        base.readBytes(b, offset, length, false);
+    }
+
+    @Override
+    protected void seekInternal(final long pos) {
+    }
+
+    @Override
+    public DatabaseSlicedIndexInput clone() {
+        final DatabaseSlicedIndexInput clone = (DatabaseSlicedIndexInput) super.clone();
+        clone.base = base.clone();
+        return clone;
+    }
+
+    @Override
+    public void close() throws IOException {
+        base.close();
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+}
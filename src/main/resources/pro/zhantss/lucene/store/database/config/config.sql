@@ -4,8 +4,59 @@ sql.table.exists=SELECT count(*) FROM %s
 sql.select.listall=SELECT "name" FROM %s
 sql.select.name=SELECT "name" FROM %s WHERE "name" = ?
 sql.select.size=SELECT "size" FROM %s WHERE "name" = ?
+# the size and the time the row was written, checked by the local file cache
+sql.select.version=SELECT "size", "updated" FROM %s WHERE "name" = ?
+sql.select.sizes=SELECT "name", "size" FROM %s
+# changes whenever a file is added or deleted
+sql.select.generation=SELECT COUNT(*), MAX("updated"), SUM("size") FROM %s
 sql.select.content=SELECT "content" FROM %s WHERE "name" = ?
+sql.select.file=SELECT "size", "content" FROM %s WHERE "name" = ?
+# the second argument is the list of parameters of the IN clause
+sql.select.files=SELECT "name", "size", "content" FROM %s WHERE "name" IN (%s)
+# the metadata of the files selected by sql.select.files, in every layout
+sql.select.filesizes=SELECT "name", "size" FROM %s WHERE "name" IN (%s)
+# optional, parameters are the 1-based offset, the length and the name
+sql.select.range=
 
 sql.insert=
 sql.update=
 sql.delete=DELETE FROM %s WHERE "name" = ?
+
+sql.chunk.table.create=
+sql.chunk.table.exists=SELECT count(*) FROM %s_chunks
+sql.chunk.select.range=SELECT "chunk", "content" FROM %s_chunks WHERE "name" = ? AND "chunk" BETWEEN ? AND ? ORDER BY "chunk"
+sql.chunk.insert=INSERT INTO %s_chunks ("name", "chunk", "content") VALUES (?, ?, ?)
+sql.chunk.update=UPDATE %s_chunks SET "name" = ? WHERE "name" = ?
+sql.chunk.delete=DELETE FROM %s_chunks WHERE "name" = ?
+
+sql.dedup.table.create=
+sql.dedup.insert=
+sql.dedup.content.table.create=
+sql.dedup.content.table.exists=SELECT count(*) FROM %s
+sql.dedup.select.hash=SELECT "hash" FROM %s WHERE "name" = ?
+# the first argument is the index table, the second the shared content table
+sql.dedup.select.content=SELECT c."content" FROM %1$s i JOIN %2$s c ON c."hash" = i."hash" WHERE i."name" = ?
+sql.dedup.select.file=SELECT i."size", c."content" FROM %1$s i LEFT JOIN %2$s c ON c."hash" = i."hash" WHERE i."name" = ?
+# the third argument is the list of parameters of the IN clause
+sql.dedup.select.files=SELECT i."name", i."size", c."content" FROM %1$s i LEFT JOIN %2$s c ON c."hash" = i."hash" WHERE i."name" IN (%3$s)
+sql.dedup.content.acquire=UPDATE %s SET "refs" = "refs" + 1 WHERE "hash" = ?
+sql.dedup.content.insert=INSERT INTO %s ("hash", "content", "size", "refs") VALUES (?, ?, ?, 1)
+sql.dedup.content.release=UPDATE %s SET "refs" = "refs" - 1 WHERE "hash" = ?
+sql.dedup.content.purge=DELETE FROM %s WHERE "hash" = ? AND "refs" <= 0
+
+sql.split.table.create=
+sql.split.insert=
+sql.split.select.generation=SELECT COUNT(*), MAX("generation"), SUM("size") FROM %s
+sql.split.select.lastgeneration=SELECT MAX("generation") FROM %s
+# optional, as sql.select.range on the content table
+sql.split.select.range=
+sql.split.select.version=SELECT "size", "updated", "checksum" FROM %s WHERE "name" = ?
+sql.split.select.file=SELECT m."size", c."content" FROM %1$s m LEFT JOIN %1$s_content c ON c."name" = m."name" WHERE m."name" = ?
+# the second argument is the list of parameters of the IN clause
+sql.split.select.files=SELECT m."name", m."size", c."content" FROM %1$s m LEFT JOIN %1$s_content c ON c."name" = m."name" WHERE m."name" IN (%2$s)
+sql.split.content.table.create=
+sql.split.content.table.exists=SELECT count(*) FROM %s_content
+sql.split.content.select=SELECT "content" FROM %s_content WHERE "name" = ?
+sql.split.content.insert=INSERT INTO %s_content ("name", "content") VALUES (?, ?)
+sql.split.content.update=UPDATE %s_content SET "name" = ? WHERE "name" = ?
+sql.split.content.delete=DELETE FROM %s_content WHERE "name" = ?
@@ -1,9 +1,44 @@
 sql.table.create=create table %s (\
 					name varchar(50) not null,\
 					content blob(500000 K),\
-					size integer,\
-					updated timestamp,
+					size bigint,\
+					updated timestamp,\
 					primary key (name)\
 				  )
 sql.insert=INSERT INTO %s (name, content, size, updated) VALUES (?, ?, ?, current_timestamp)
-sql.update=UPDATE %s SET name = ?, updated = current_timestamp WHERE name = ?
\ No newline at end of file
+sql.update=UPDATE %s SET name = ?, updated = current_timestamp WHERE name = ?
+sql.chunk.table.create=create table %s_chunks (\
+					name varchar(50) not null,\
+					chunk integer not null,\
+					content blob(500000 K),\
+					primary key (name, chunk)\
+				  )
+sql.dedup.table.create=create table %s (\
+					name varchar(50) not null,\
+					hash varchar(64),\
+					size bigint,\
+					updated timestamp,\
+					primary key (name)\
+				  )
+sql.dedup.insert=INSERT INTO %s (name, hash, size, updated) VALUES (?, ?, ?, current_timestamp)
+sql.dedup.content.table.create=create table %s (\
+					hash varchar(64) not null,\
+					content blob(500000 K),\
+					size bigint,\
+					refs integer not null,\
+					primary key (hash)\
+				  )
+sql.split.table.create=create table %s (\
+					name varchar(50) not null,\
+					size bigint,\
+					checksum bigint,\
+					generation bigint,\
+					updated timestamp,\
+					primary key (name)\
+				  )
+sql.split.insert=INSERT INTO %s (name, size, checksum, generation, updated) VALUES (?, ?, ?, ?, current_timestamp)
+sql.split.content.table.create=create table %s_content (\
+					name varchar(50) not null,\
+					content blob(500000 K),\
+					primary key (name)\
+				  )
@@ -1,9 +1,44 @@
 sql.table.create=create table %s (\
 					"name" varchar2(50) not null,\
 					"content" blob,\
-					"size" number(10,0),\
+					"size" number(19,0),\
 					"updated" timestamp,\
 					primary key ("name")\
 				  )   
 sql.insert=INSERT INTO %s ("name", "content", "size", "updated") VALUES (?, ?, ?, systimestamp)
-sql.update=UPDATE %s SET "name" = ?, "updated" = systimestamp WHERE "name" = ?
\ No newline at end of file
+sql.update=UPDATE %s SET "name" = ?, "updated" = systimestamp WHERE "name" = ?
+sql.chunk.table.create=create table %s_chunks (\
+					"name" varchar2(50) not null,\
+					"chunk" number(10,0) not null,\
+					"content" blob,\
+					primary key ("name", "chunk")\
+				  )
+sql.dedup.table.create=create table %s (\
+					"name" varchar2(50) not null,\
+					"hash" varchar2(64),\
+					"size" number(19,0),\
+					"updated" timestamp,\
+					primary key ("name")\
+				  )
+sql.dedup.insert=INSERT INTO %s ("name", "hash", "size", "updated") VALUES (?, ?, ?, systimestamp)
+sql.dedup.content.table.create=create table %s (\
+					"hash" varchar2(64) not null,\
+					"content" blob,\
+					"size" number(19,0),\
+					"refs" number(10,0) not null,\
+					primary key ("hash")\
+				  )
+sql.split.table.create=create table %s (\
+					"name" varchar2(50) not null,\
+					"size" number(19,0),\
+					"checksum" number(19,0),\
+					"generation" number(19,0),\
+					"updated" timestamp,\
+					primary key ("name")\
+				  )
+sql.split.insert=INSERT INTO %s ("name", "size", "checksum", "generation", "updated") VALUES (?, ?, ?, ?, systimestamp)
+sql.split.content.table.create=create table %s_content (\
+					"name" varchar2(50) not null,\
+					"content" blob,\
+					primary key ("name")\
+				  )
@@ -1,9 +1,46 @@
 sql.table.create=create table %s (\
 					name varchar(50) not null,\
 					content image,\
-					size int,\
-					updated datetime,
+					size bigint,\
+					updated datetime,\
 					primary key (name)\
 				  )   
 sql.insert=INSERT INTO %s (name, content, size, updated) VALUES (?, ?, ?, getdate())
-sql.update=UPDATE %s SET name = ?, updated = getdate() WHERE name = ?
\ No newline at end of file
+sql.update=UPDATE %s SET name = ?, updated = getdate() WHERE name = ?
+sql.select.range=SELECT SUBSTRING(content, ?, ?) FROM %s WHERE name = ?
+sql.chunk.table.create=create table %s_chunks (\
+					name varchar(50) not null,\
+					chunk integer not null,\
+					content image,\
+					primary key (name, chunk)\
+				  )
+sql.dedup.table.create=create table %s (\
+					name varchar(50) not null,\
+					hash varchar(64),\
+					size bigint,\
+					updated datetime,\
+					primary key (name)\
+				  )
+sql.dedup.insert=INSERT INTO %s (name, hash, size, updated) VALUES (?, ?, ?, getdate())
+sql.dedup.content.table.create=create table %s (\
+					hash varchar(64) not null,\
+					content image,\
+					size bigint,\
+					refs integer not null,\
+					primary key (hash)\
+				  )
+sql.split.table.create=create table %s (\
+					name varchar(50) not null,\
+					size bigint,\
+					checksum bigint,\
+					generation bigint,\
+					updated datetime,\
+					primary key (name)\
+				  )
+sql.split.insert=INSERT INTO %s (name, size, checksum, generation, updated) VALUES (?, ?, ?, ?, getdate())
+sql.split.select.range=SELECT SUBSTRING(content, ?, ?) FROM %s_content WHERE name = ?
+sql.split.content.table.create=create table %s_content (\
+					name varchar(50) not null,\
+					content image,\
+					primary key (name)\
+				  )